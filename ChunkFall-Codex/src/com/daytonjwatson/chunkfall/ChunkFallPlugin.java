@@ -2,18 +2,26 @@ package com.daytonjwatson.chunkfall;
 
 import org.bukkit.Bukkit;
 import org.bukkit.World;
+import org.bukkit.generator.ChunkGenerator;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import com.daytonjwatson.chunkfall.command.ChunkFallCommand;
 import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
+import com.daytonjwatson.chunkfall.generator.IslandChunkGenerator;
+import com.daytonjwatson.chunkfall.generator.VoidingPopulator;
 import com.daytonjwatson.chunkfall.listener.ChunkLoadListener;
 import com.daytonjwatson.chunkfall.listener.CobbleGeneratorListener;
 import com.daytonjwatson.chunkfall.listener.ElytraListener;
+import com.daytonjwatson.chunkfall.listener.EdgePhysicsListener;
 import com.daytonjwatson.chunkfall.listener.LimboChunkListener;
 import com.daytonjwatson.chunkfall.listener.LimboListener;
 import com.daytonjwatson.chunkfall.listener.VoidDeathListener;
+import com.daytonjwatson.chunkfall.listener.WorldListener;
 import com.daytonjwatson.chunkfall.logic.ChunkProcessor;
 import com.daytonjwatson.chunkfall.logic.CobbleGeneratorManager;
+import com.daytonjwatson.chunkfall.logic.IslandLayout;
 import com.daytonjwatson.chunkfall.logic.LimboManager;
+import com.daytonjwatson.chunkfall.logic.PregenManager;
 
 public class ChunkFallPlugin extends JavaPlugin {
 
@@ -21,6 +29,7 @@ public class ChunkFallPlugin extends JavaPlugin {
     private ChunkProcessor chunkProcessor;
     private LimboManager limboManager;
     private CobbleGeneratorManager cobbleGeneratorManager;
+    private PregenManager pregenManager;
 
     @Override
     public void onEnable() {
@@ -28,15 +37,35 @@ public class ChunkFallPlugin extends JavaPlugin {
 
         // Load config and core logic
         this.chunkFallConfig = new ChunkFallConfig(this);
-        this.chunkProcessor = new ChunkProcessor(chunkFallConfig);
+        this.chunkProcessor = new ChunkProcessor(this, chunkFallConfig);
         this.limboManager = new LimboManager(chunkFallConfig);
 
-        // Register main world / nether chunk logic
+        // Void new chunks on the worldgen threads; worlds loaded before us (reload) get it right away
+        WorldListener worldListener = new WorldListener(
+                chunkFallConfig,
+                new VoidingPopulator(chunkFallConfig, chunkProcessor),
+                chunkProcessor.getLedgers(),
+                chunkProcessor.getStructureIndex()
+        );
+        Bukkit.getPluginManager().registerEvents(worldListener, this);
+        for (World world : Bukkit.getWorlds()) {
+            worldListener.attachPopulator(world);
+        }
+
+        // Register main world / nether chunk logic (fallback for chunks the populator didn't see)
         Bukkit.getPluginManager().registerEvents(
                 new ChunkLoadListener(chunkFallConfig, chunkProcessor),
                 this
         );
 
+        // Hold back physics and fluids next to freshly voided chunks
+        if (chunkProcessor.getEdgePhysicsGuard() != null) {
+            Bukkit.getPluginManager().registerEvents(
+                    new EdgePhysicsListener(chunkProcessor.getEdgePhysicsGuard()),
+                    this
+            );
+        }
+
         // Limbo void generation
         Bukkit.getPluginManager().registerEvents(
                 new LimboChunkListener(chunkFallConfig),
@@ -73,6 +102,22 @@ public class ChunkFallPlugin extends JavaPlugin {
             cobbleGeneratorManager.start();
         }
 
+        // Spread main-thread chunk voiding over ticks
+        chunkProcessor.start();
+
+        // Pregeneration job (/chunkfall pregen), resumed if one was running
+        this.pregenManager = new PregenManager(
+                this,
+                chunkFallConfig,
+                chunkProcessor.getIslandLayout(),
+                chunkProcessor.getLedgers()
+        );
+        pregenManager.load();
+
+        ChunkFallCommand command = new ChunkFallCommand(this);
+        getCommand("chunkfall").setExecutor(command);
+        getCommand("chunkfall").setTabCompleter(command);
+
         // Setup overworld spawn island
         World overworld = Bukkit.getWorld(chunkFallConfig.getTargetWorldName());
         if (overworld != null && chunkFallConfig.isSetOverworldSpawnOnIsland()) {
@@ -80,6 +125,32 @@ public class ChunkFallPlugin extends JavaPlugin {
         }
     }
 
+    @Override
+    public void onDisable() {
+        if (pregenManager != null) {
+            pregenManager.shutdown();
+        }
+        if (cobbleGeneratorManager != null) {
+            cobbleGeneratorManager.shutdown();
+        }
+        if (chunkProcessor != null) {
+            chunkProcessor.shutdown();
+        }
+    }
+
+    /**
+     * Used when bukkit.yml sets "generator: ChunkFall" for a world.
+     * Worlds load after this STARTUP plugin is enabled, so config and processor exist here.
+     */
+    @Override
+    public ChunkGenerator getDefaultWorldGenerator(String worldName, String id) {
+        if (chunkFallConfig == null || chunkProcessor == null) {
+            getLogger().warning("[ChunkFall] Generator requested for " + worldName + " before the plugin was enabled.");
+            return null;
+        }
+        return new IslandChunkGenerator(chunkFallConfig, chunkProcessor.getIslandLayout());
+    }
+
     public ChunkFallConfig getChunkFallConfig() {
         return chunkFallConfig;
     }
@@ -88,6 +159,13 @@ public class ChunkFallPlugin extends JavaPlugin {
         return chunkProcessor;
     }
 
+    /**
+     * Island layout for other plugins: isIslandChunk / keptChunkFor without recomputation.
+     */
+    public IslandLayout getIslandLayout() {
+        return chunkProcessor.getIslandLayout();
+    }
+
     public LimboManager getLimboManager() {
         return limboManager;
     }
@@ -95,4 +173,8 @@ public class ChunkFallPlugin extends JavaPlugin {
     public CobbleGeneratorManager getCobbleGeneratorManager() {
         return cobbleGeneratorManager;
     }
+
+    public PregenManager getPregenManager() {
+        return pregenManager;
+    }
 }
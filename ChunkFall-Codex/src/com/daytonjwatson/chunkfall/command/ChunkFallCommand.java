@@ -0,0 +1,178 @@
+package com.daytonjwatson.chunkfall.command;
+
+import com.daytonjwatson.chunkfall.ChunkFallPlugin;
+import com.daytonjwatson.chunkfall.logic.CobbleGeneratorManager;
+import com.daytonjwatson.chunkfall.logic.ChunkWorkQueue;
+import com.daytonjwatson.chunkfall.logic.EdgePhysicsGuard;
+import com.daytonjwatson.chunkfall.logic.EntityPurge;
+import com.daytonjwatson.chunkfall.logic.PregenManager;
+import com.daytonjwatson.chunkfall.util.MessageUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChunkFallCommand implements TabExecutor {
+
+    private static final List<String> SUBCOMMANDS = List.of("status", "pregen");
+    private static final List<String> PREGEN_ACTIONS = List.of("status", "pause", "resume", "cancel");
+
+    private final ChunkFallPlugin plugin;
+
+    public ChunkFallCommand(ChunkFallPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0) {
+            MessageUtil.info(sender, "Usage: /" + label + " <status|pregen>");
+            return true;
+        }
+
+        switch (args[0].toLowerCase()) {
+            case "status" -> sendStatus(sender);
+            case "pregen" -> handlePregen(sender, label, args);
+            default -> MessageUtil.error(sender, "Unknown subcommand: " + args[0]);
+        }
+        return true;
+    }
+
+    private void sendStatus(CommandSender sender) {
+        ChunkWorkQueue queue = plugin.getChunkProcessor().getWorkQueue();
+        MessageUtil.info(sender, "Chunk queue backlog: " + queue.getBacklog()
+                + " (peak " + queue.getPeakBacklog()
+                + ", synchronous fallbacks " + queue.getSynchronousFallbacks() + ")");
+        MessageUtil.info(sender, "Protection scans pending: " + plugin.getChunkProcessor().getPendingScanCount()
+                + " (" + plugin.getChunkProcessor().getProtectionScanner().getParallelism() + " threads)");
+
+        EdgePhysicsGuard edges = plugin.getChunkProcessor().getEdgePhysicsGuard();
+        if (edges != null) {
+            MessageUtil.info(sender, "Edge physics: " + edges.getGuardedChunks() + " chunks guarded, "
+                    + edges.getSuppressed() + " updates held back");
+        }
+
+        EntityPurge purge = plugin.getChunkProcessor().getEntityPurge();
+        if (purge != null) {
+            MessageUtil.info(sender, "Purged from voided chunks: " + purge.getEntitiesRemoved() + " entities");
+        }
+
+        CobbleGeneratorManager generators = plugin.getCobbleGeneratorManager();
+        if (generators != null) {
+            MessageUtil.info(sender, "Cobble generators: " + generators.getGeneratorCount() + " ("
+                    + generators.getActiveGeneratorCount() + " in loaded chunks, "
+                    + generators.getCarriedOver() + " carried over to the next tick, "
+                    + generators.getScheduledWakeups() + " wake-ups scheduled)");
+        }
+    }
+
+    private void handlePregen(CommandSender sender, String label, String[] args) {
+        PregenManager pregen = plugin.getPregenManager();
+
+        if (args.length < 2) {
+            MessageUtil.info(sender, "Usage: /" + label + " pregen <world> <radius-blocks> | status | pause | resume | cancel");
+            return;
+        }
+
+        switch (args[1].toLowerCase()) {
+            case "status" -> sendPregenStatus(sender, pregen);
+            case "pause" -> {
+                if (pregen.pause()) {
+                    MessageUtil.success(sender, "Pregeneration paused.");
+                } else {
+                    MessageUtil.error(sender, "No running pregeneration.");
+                }
+            }
+            case "resume" -> {
+                if (pregen.resume()) {
+                    MessageUtil.success(sender, "Pregeneration resumed.");
+                } else {
+                    MessageUtil.error(sender, "No paused pregeneration.");
+                }
+            }
+            case "cancel" -> {
+                if (pregen.cancel()) {
+                    MessageUtil.success(sender, "Pregeneration cancelled.");
+                } else {
+                    MessageUtil.error(sender, "No pregeneration to cancel.");
+                }
+            }
+            default -> startPregen(sender, label, pregen, args);
+        }
+    }
+
+    private void startPregen(CommandSender sender, String label, PregenManager pregen, String[] args) {
+        if (args.length < 3) {
+            MessageUtil.info(sender, "Usage: /" + label + " pregen <world> <radius-blocks>");
+            return;
+        }
+
+        World world = Bukkit.getWorld(args[1]);
+        if (world == null) {
+            MessageUtil.error(sender, "Unknown world: " + args[1]);
+            return;
+        }
+
+        int radius;
+        try {
+            radius = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            MessageUtil.error(sender, "Radius must be a number of blocks.");
+            return;
+        }
+        if (radius <= 0) {
+            MessageUtil.error(sender, "Radius must be positive.");
+            return;
+        }
+
+        if (!pregen.start(world, radius)) {
+            MessageUtil.error(sender, "A pregeneration job already exists for " + pregen.getWorldName()
+                    + ". Cancel it first.");
+            return;
+        }
+
+        MessageUtil.success(sender, "Pregenerating " + world.getName() + " within " + radius
+                + " blocks of 0,0 (" + (pregen.isAsyncLoading() ? "async" : "sync") + " loading), islands first.");
+    }
+
+    private void sendPregenStatus(CommandSender sender, PregenManager pregen) {
+        if (!pregen.hasJob()) {
+            MessageUtil.info(sender, "No pregeneration job.");
+            return;
+        }
+
+        long eta = pregen.getEtaSeconds();
+        MessageUtil.info(sender, "Pregen " + pregen.getWorldName() + ": " + pregen.getPhase()
+                + (pregen.isPaused() ? " (paused)" : "")
+                + ", region " + pregen.getRegionCursor() + "/" + pregen.getTotalRegions());
+        MessageUtil.info(sender, "Chunks " + pregen.getChunksDone() + "/" + pregen.getTotalChunks()
+                + String.format(", %.1f chunks/s", pregen.getRate())
+                + ", ETA " + (eta < 0 ? "unknown" : PregenManager.formatDuration(eta)));
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        List<String> options = new ArrayList<>();
+        if (args.length == 1) {
+            options.addAll(SUBCOMMANDS);
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("pregen")) {
+            options.addAll(PREGEN_ACTIONS);
+            for (World world : Bukkit.getWorlds()) {
+                options.add(world.getName());
+            }
+        }
+
+        List<String> result = new ArrayList<>();
+        String prefix = args.length > 0 ? args[args.length - 1].toLowerCase() : "";
+        for (String option : options) {
+            if (option.toLowerCase().startsWith(prefix)) {
+                result.add(option);
+            }
+        }
+        return result;
+    }
+}
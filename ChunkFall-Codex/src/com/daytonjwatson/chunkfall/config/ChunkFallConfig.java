@@ -1,21 +1,51 @@
 package com.daytonjwatson.chunkfall.config;
 
-import org.bukkit.World;
 import org.bukkit.World.Environment;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.generator.WorldInfo;
 import org.bukkit.plugin.Plugin;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
 public class ChunkFallConfig {
 
     private final String targetWorldName;
     private final int regionSizeChunks;
     private final boolean setOverworldSpawnOnIsland;
+    private final boolean asyncVoiding;
+    private final int protectionScanThreads;
+
+    // Physics hold-back around voided chunks
+    private final boolean edgePhysicsEnabled;
+    private final int edgePhysicsWindowTicks;
+
+    // Entity purge in voided chunks
+    private final boolean voidPurgeEnabled;
+    private final List<String> voidPurgeKeepEntities;
+
+    // Main-thread chunk work queue
+    private final boolean chunkQueueEnabled;
+    private final double chunkQueueTickBudgetMs;
+    private final int chunkQueueMaxBacklog;
+    private final int chunkQueueMaxWaitTicks;
+
+    // Pregeneration (/chunkfall pregen)
+    private final double pregenTickBudgetMs;
+    private final int pregenMaxChunksPerTick;
+    private final int pregenMaxInFlight;
+    private final int pregenMaxTickMs;
 
     private final boolean protectEndPortalRoom;
     private final boolean protectEndPortalNeighbors;
     private final boolean protectNetherFortressEssentials;
 
+    // Blocks kept when voiding, per dimension
+    private final Map<Environment, List<PreserveRule>> preserveRules;
+
     private final boolean disableElytraRocketBoost;
 
     private final boolean starterKitEnabled;
@@ -34,6 +64,10 @@ public class ChunkFallConfig {
     private final int cobbleGeneratorTicksPerCobble;
     private final int cobbleVerticalSearchRange;
     private final double cobbleEfficiencyPerLevel;
+    private final int cobbleSaveIntervalSeconds;
+    private final int cobbleTickBudgetMicros;
+    private final boolean cobbleOfflineCatchUp;
+    private final int cobbleOfflineMaxHours;
 
     private final double cobbleSpeedWooden;
     private final double cobbleSpeedStone;
@@ -54,6 +88,40 @@ public class ChunkFallConfig {
         this.targetWorldName = cfg.getString("target-world", "world");
         this.regionSizeChunks = Math.max(1, cfg.getInt("region-size-chunks", 64));
         this.setOverworldSpawnOnIsland = cfg.getBoolean("set-overworld-spawn-on-island", true);
+        this.asyncVoiding = cfg.getBoolean("async-voiding", true);
+        this.protectionScanThreads = Math.max(0, cfg.getInt("protection-scan-threads", 0));
+
+        // Edge physics
+        ConfigurationSection ep = cfg.getConfigurationSection("edge-physics");
+        this.edgePhysicsEnabled = ep != null && ep.getBoolean("enabled", true);
+        this.edgePhysicsWindowTicks =
+                ep != null ? Math.max(1, ep.getInt("window-ticks", 100)) : 100;
+
+        // Entity purge
+        ConfigurationSection vp = cfg.getConfigurationSection("void-purge");
+        this.voidPurgeEnabled = vp != null && vp.getBoolean("enabled", true);
+        this.voidPurgeKeepEntities = vp != null ? vp.getStringList("keep-entities") : List.of();
+
+        // Chunk work queue
+        ConfigurationSection cq = cfg.getConfigurationSection("chunk-queue");
+        this.chunkQueueEnabled = cq != null && cq.getBoolean("enabled", true);
+        this.chunkQueueTickBudgetMs =
+                cq != null ? Math.max(0.1, cq.getDouble("tick-budget-ms", 5.0)) : 5.0;
+        this.chunkQueueMaxBacklog =
+                cq != null ? Math.max(1, cq.getInt("max-backlog", 512)) : 512;
+        this.chunkQueueMaxWaitTicks =
+                cq != null ? Math.max(1, cq.getInt("max-wait-ticks", 40)) : 40;
+
+        // Pregeneration
+        ConfigurationSection pg = cfg.getConfigurationSection("pregen");
+        this.pregenTickBudgetMs =
+                pg != null ? Math.max(0.1, pg.getDouble("tick-budget-ms", 10.0)) : 10.0;
+        this.pregenMaxChunksPerTick =
+                pg != null ? Math.max(1, pg.getInt("max-chunks-per-tick", 8)) : 8;
+        this.pregenMaxInFlight =
+                pg != null ? Math.max(1, pg.getInt("max-in-flight", 16)) : 16;
+        this.pregenMaxTickMs =
+                pg != null ? Math.max(50, pg.getInt("max-tick-ms", 60)) : 60;
 
         this.protectEndPortalRoom = cfg.getBoolean("protect-end-portal-room", true);
         this.protectEndPortalNeighbors = cfg.getBoolean("protect-end-portal-neighbors", true);
@@ -61,6 +129,8 @@ public class ChunkFallConfig {
         this.protectNetherFortressEssentials =
                 cfg.getBoolean("protect-nether-fortress-essential-chunks", true);
 
+        this.preserveRules = readPreserveRules(cfg.getConfigurationSection("preserve"));
+
         this.disableElytraRocketBoost =
                 cfg.getBoolean("disable-elytra-rocket-boost", true);
 
@@ -92,6 +162,16 @@ public class ChunkFallConfig {
         this.cobbleEfficiencyPerLevel =
                 cg != null ? cg.getDouble("efficiency-multiplier-per-level", 0.2) : 0.2;
 
+        this.cobbleSaveIntervalSeconds =
+                cg != null ? Math.max(1, cg.getInt("save-interval-seconds", 5)) : 5;
+
+        this.cobbleTickBudgetMicros =
+                cg != null ? Math.max(50, cg.getInt("tick-budget-micros", 2000)) : 2000;
+
+        ConfigurationSection offline = cg != null ? cg.getConfigurationSection("offline-catch-up") : null;
+        this.cobbleOfflineCatchUp = offline != null && offline.getBoolean("enabled", false);
+        this.cobbleOfflineMaxHours = offline != null ? Math.max(0, offline.getInt("max-hours", 24)) : 24;
+
         ConfigurationSection tier = cg != null ? cg.getConfigurationSection("tier-speed") : null;
         this.cobbleSpeedWooden = tier != null ? tier.getDouble("wooden", 0.25) : 0.25;
         this.cobbleSpeedStone = tier != null ? tier.getDouble("stone", 0.5) : 0.5;
@@ -110,6 +190,38 @@ public class ChunkFallConfig {
         this.cobbleSoundOnBreak = snd != null ? snd.getBoolean("on-break", true) : true;
     }
 
+    private static Map<Environment, List<PreserveRule>> readPreserveRules(ConfigurationSection section) {
+        Map<Environment, List<PreserveRule>> rules = new EnumMap<>(Environment.class);
+        if (section == null) {
+            rules.put(Environment.NETHER, List.of(PreserveRule.NETHER_FALLBACK));
+            return rules;
+        }
+
+        readPreserveRules(section.getConfigurationSection("overworld"), Environment.NORMAL, rules);
+        readPreserveRules(section.getConfigurationSection("nether"), Environment.NETHER, rules);
+        return rules;
+    }
+
+    private static void readPreserveRules(ConfigurationSection section, Environment env,
+                                          Map<Environment, List<PreserveRule>> rules) {
+        if (section == null) {
+            return;
+        }
+        List<PreserveRule> list = new ArrayList<>();
+        for (String name : section.getKeys(false)) {
+            ConfigurationSection rule = section.getConfigurationSection(name);
+            if (rule == null) {
+                continue;
+            }
+            list.add(new PreserveRule(name,
+                    rule.getStringList("blocks"),
+                    rule.getString("state", null),
+                    rule.getInt("min-y", Integer.MIN_VALUE),
+                    rule.getInt("max-y", Integer.MAX_VALUE)));
+        }
+        rules.put(env, list);
+    }
+
     public String getTargetWorldName() {
         return targetWorldName;
     }
@@ -122,6 +234,72 @@ public class ChunkFallConfig {
         return setOverworldSpawnOnIsland;
     }
 
+    public boolean isAsyncVoiding() {
+        return asyncVoiding;
+    }
+
+    /**
+     * Worker threads for protection scans, 0 = one less than the number of cores.
+     */
+    public int getProtectionScanThreads() {
+        return protectionScanThreads;
+    }
+
+    // Edge physics getters
+    public boolean isEdgePhysicsEnabled() {
+        return edgePhysicsEnabled;
+    }
+
+    public int getEdgePhysicsWindowTicks() {
+        return edgePhysicsWindowTicks;
+    }
+
+    // Entity purge getters
+    public boolean isVoidPurgeEnabled() {
+        return voidPurgeEnabled;
+    }
+
+    /**
+     * Entity type names never removed from voided chunks.
+     */
+    public List<String> getVoidPurgeKeepEntities() {
+        return voidPurgeKeepEntities;
+    }
+
+    // Chunk work queue getters
+    public boolean isChunkQueueEnabled() {
+        return chunkQueueEnabled;
+    }
+
+    public double getChunkQueueTickBudgetMs() {
+        return chunkQueueTickBudgetMs;
+    }
+
+    public int getChunkQueueMaxBacklog() {
+        return chunkQueueMaxBacklog;
+    }
+
+    public int getChunkQueueMaxWaitTicks() {
+        return chunkQueueMaxWaitTicks;
+    }
+
+    // Pregeneration getters
+    public double getPregenTickBudgetMs() {
+        return pregenTickBudgetMs;
+    }
+
+    public int getPregenMaxChunksPerTick() {
+        return pregenMaxChunksPerTick;
+    }
+
+    public int getPregenMaxInFlight() {
+        return pregenMaxInFlight;
+    }
+
+    public int getPregenMaxTickMs() {
+        return pregenMaxTickMs;
+    }
+
     public boolean isProtectEndPortalRoom() {
         return protectEndPortalRoom;
     }
@@ -134,6 +312,13 @@ public class ChunkFallConfig {
         return protectNetherFortressEssentials;
     }
 
+    /**
+     * Preserve rules for a dimension, in config order (empty if none).
+     */
+    public List<PreserveRule> getPreserveRules(Environment env) {
+        return preserveRules.getOrDefault(env, List.of());
+    }
+
     public boolean isDisableElytraRocketBoost() {
         return disableElytraRocketBoost;
     }
@@ -188,6 +373,25 @@ public class ChunkFallConfig {
         return cobbleEfficiencyPerLevel;
     }
 
+    /**
+     * Seconds between generator journal flushes: the most a crash can lose.
+     */
+    public int getCobbleSaveIntervalSeconds() {
+        return cobbleSaveIntervalSeconds;
+    }
+
+    public int getCobbleTickBudgetMicros() {
+        return cobbleTickBudgetMicros;
+    }
+
+    public boolean isCobbleOfflineCatchUp() {
+        return cobbleOfflineCatchUp;
+    }
+
+    public int getCobbleOfflineMaxHours() {
+        return cobbleOfflineMaxHours;
+    }
+
     public double getCobbleSpeedWooden() {
         return cobbleSpeedWooden;
     }
@@ -232,7 +436,7 @@ public class ChunkFallConfig {
         return cobbleSoundOnBreak;
     }
 
-    public boolean isTargetWorld(World world) {
+    public boolean isTargetWorld(WorldInfo world) {
         if (world.getEnvironment() == Environment.THE_END) {
             return false;
         }
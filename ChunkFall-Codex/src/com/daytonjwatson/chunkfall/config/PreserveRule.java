@@ -0,0 +1,58 @@
+package com.daytonjwatson.chunkfall.config;
+
+import java.util.List;
+
+/**
+ * One entry under {@code preserve.<dimension>} in config.yml: blocks that survive voiding,
+ * optionally only in a given block state or Y band. Compiled by PreserveTable.
+ */
+public class PreserveRule {
+
+    /**
+     * The rule that applies when config.yml has no preserve section at all (configs from before
+     * the rules): fortress bricks survive in the nether.
+     */
+    public static final PreserveRule NETHER_FALLBACK = new PreserveRule("fortress-bricks",
+            List.of("NETHER_BRICKS", "NETHER_BRICK_FENCE", "NETHER_BRICK_STAIRS", "NETHER_BRICK_SLAB"),
+            null, Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    private final String name;
+    private final List<String> blocks;
+    private final String state;
+    private final int minY;
+    private final int maxY;
+
+    public PreserveRule(String name, List<String> blocks, String state, int minY, int maxY) {
+        this.name = name;
+        this.blocks = List.copyOf(blocks);
+        this.state = state;
+        this.minY = minY;
+        this.maxY = maxY;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Material names ({@code NETHER_BRICKS}) or block tags ({@code #minecraft:logs}).
+     */
+    public List<String> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Block state the block must match, e.g. {@code [waterlogged=true]}, or null for any state.
+     */
+    public String getState() {
+        return state;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+}
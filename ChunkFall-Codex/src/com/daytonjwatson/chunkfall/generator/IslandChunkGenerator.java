@@ -0,0 +1,91 @@
+package com.daytonjwatson.chunkfall.generator;
+
+import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
+import com.daytonjwatson.chunkfall.logic.IslandLayout;
+import org.bukkit.World.Environment;
+import org.bukkit.generator.ChunkGenerator;
+import org.bukkit.generator.WorldInfo;
+
+import java.util.Random;
+
+/**
+ * Wraps the vanilla generator and only lets it build terrain for island chunks.
+ *
+ * Every other chunk skips noise, surface and caves entirely, so ChunkLoadListener
+ * no longer has to throw away a fully generated chunk block by block. Structures
+ * still generate everywhere so End portal rooms and fortresses stay visible to
+ * the protection logic.
+ *
+ * Enable it per world in bukkit.yml:
+ *   worlds:
+ *     world:
+ *       generator: ChunkFall
+ *     world_nether:
+ *       generator: ChunkFall
+ */
+public class IslandChunkGenerator extends ChunkGenerator {
+
+    private final ChunkFallConfig config;
+    private final IslandLayout islandLayout;
+
+    public IslandChunkGenerator(ChunkFallConfig config, IslandLayout islandLayout) {
+        this.config = config;
+        this.islandLayout = islandLayout;
+    }
+
+    private boolean isTerrainChunk(WorldInfo worldInfo, int chunkX, int chunkZ) {
+        if (!config.isTargetWorld(worldInfo)) {
+            return true; // not ours, behave exactly like vanilla
+        }
+        return islandLayout.isIslandChunk(worldInfo, chunkX, chunkZ);
+    }
+
+    @Override
+    public boolean shouldGenerateNoise(WorldInfo worldInfo, Random random, int chunkX, int chunkZ) {
+        return isTerrainChunk(worldInfo, chunkX, chunkZ);
+    }
+
+    @Override
+    public boolean shouldGenerateSurface(WorldInfo worldInfo, Random random, int chunkX, int chunkZ) {
+        return isTerrainChunk(worldInfo, chunkX, chunkZ);
+    }
+
+    @Override
+    public boolean shouldGenerateCaves(WorldInfo worldInfo, Random random, int chunkX, int chunkZ) {
+        return isTerrainChunk(worldInfo, chunkX, chunkZ);
+    }
+
+    /**
+     * Structure pieces are placed during the decoration step, so void chunks still
+     * decorate whenever a structure has to survive there:
+     *  - Overworld: End portal rooms (if protected)
+     *  - Nether: fortresses (spawner/wart protection)
+     *  - Any dimension with preserve rules (fortress bricks, ancient cities, ...)
+     */
+    @Override
+    public boolean shouldGenerateDecorations(WorldInfo worldInfo, Random random, int chunkX, int chunkZ) {
+        if (isTerrainChunk(worldInfo, chunkX, chunkZ)) {
+            return true;
+        }
+        Environment env = worldInfo.getEnvironment();
+        if (env == Environment.NETHER || !config.getPreserveRules(env).isEmpty()) {
+            return true;
+        }
+        return env == Environment.NORMAL && config.isProtectEndPortalRoom();
+    }
+
+    @Override
+    public boolean shouldGenerateMobs(WorldInfo worldInfo, Random random, int chunkX, int chunkZ) {
+        return isTerrainChunk(worldInfo, chunkX, chunkZ);
+    }
+
+    @Override
+    public boolean shouldGenerateStructures(WorldInfo worldInfo, Random random, int chunkX, int chunkZ) {
+        return true;
+    }
+
+    @Override
+    public boolean isParallelCapable() {
+        return true;
+    }
+}
@@ -0,0 +1,34 @@
+package com.daytonjwatson.chunkfall.generator;
+
+import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
+import com.daytonjwatson.chunkfall.logic.ChunkProcessor;
+import org.bukkit.generator.BlockPopulator;
+import org.bukkit.generator.LimitedRegion;
+import org.bukkit.generator.WorldInfo;
+
+import java.util.Random;
+
+/**
+ * Voids chunks during world generation instead of in ChunkLoadEvent.
+ *
+ * Populators run on the worldgen worker threads, so the keep/protect/void decision and
+ * all of the block writes happen before the chunk ever reaches the main thread.
+ */
+public class VoidingPopulator extends BlockPopulator {
+
+    private final ChunkFallConfig config;
+    private final ChunkProcessor processor;
+
+    public VoidingPopulator(ChunkFallConfig config, ChunkProcessor processor) {
+        this.config = config;
+        this.processor = processor;
+    }
+
+    @Override
+    public void populate(WorldInfo worldInfo, Random random, int chunkX, int chunkZ, LimitedRegion limitedRegion) {
+        if (!config.isTargetWorld(worldInfo)) {
+            return;
+        }
+        processor.handleChunkPopulate(worldInfo, chunkX, chunkZ, limitedRegion);
+    }
+}
@@ -6,6 +6,7 @@ import org.bukkit.World;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
 
 public class ChunkLoadListener implements Listener {
 
@@ -32,4 +33,12 @@ public class ChunkLoadListener implements Listener {
 
         processor.handleChunkLoad(event.getChunk());
     }
+
+    @EventHandler
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        if (!config.isTargetWorld(event.getWorld())) {
+            return;
+        }
+        processor.handleChunkUnload(event.getChunk());
+    }
 }
\ No newline at end of file
@@ -10,14 +10,33 @@ import org.bukkit.block.BlockState;
 import org.bukkit.block.Container;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.inventory.EquipmentSlot;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
+import java.util.List;
+
 public class CobbleGeneratorListener implements Listener {
 
     private final ChunkFallConfig config;
@@ -44,6 +63,118 @@ public class CobbleGeneratorListener implements Listener {
                 || type == Material.NETHERITE_PICKAXE;
     }
 
+    @EventHandler
+    public void onWorldLoad(WorldLoadEvent event) {
+        // Stored generators come back once their world exists
+        manager.attachWorld(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        manager.handleWorldUnload(event.getWorld());
+    }
+
+    // Only generators in loaded chunks are ticked
+    @EventHandler
+    public void onChunkLoad(ChunkLoadEvent event) {
+        manager.handleChunkLoad(event.getChunk());
+    }
+
+    @EventHandler
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        manager.handleChunkUnload(event.getChunk());
+    }
+
+    // Blocks changing under a generator: its barrel can go away without anyone breaking it,
+    // and the stone index of its chunk has to follow
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        changedAll(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        changedAll(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) {
+        changed(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) {
+        changed(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        // Lava meeting water makes stone
+        manager.handleBlockChange(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        manager.handleBlockChange(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        // Withers, ravagers, endermen...
+        changed(event.getBlock());
+    }
+
+    // Vanilla pistons cannot move barrels, but server forks and plugins can.
+    // Moved stone also lands one block further along
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        changedAll(event.getBlocks());
+        for (Block block : event.getBlocks()) {
+            manager.handleBlockChange(block.getRelative(event.getDirection()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        changedAll(event.getBlocks());
+        for (Block block : event.getBlocks()) {
+            manager.handleBlockChange(block.getRelative(event.getDirection()));
+        }
+    }
+
+    // A generator only wakes when its next cobble is due; a new pickaxe or fuel must wake it early
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        manager.handleInventoryChange(event.getInventory());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        manager.handleInventoryChange(event.getInventory());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryMoveItem(InventoryMoveItemEvent event) {
+        // Hoppers feeding fuel or a pickaxe in, or pulling cobble out
+        manager.handleInventoryChange(event.getSource());
+        manager.handleInventoryChange(event.getDestination());
+    }
+
+    private void changedAll(List<Block> blocks) {
+        for (Block block : blocks) {
+            changed(block);
+        }
+    }
+
+    private void changed(Block block) {
+        manager.handleBlockChange(block);
+        if (block.getType() == Material.BARREL && manager.isGenerator(block)) {
+            manager.unregisterGenerator(block);
+        }
+    }
+
     @EventHandler
     public void onCreateGenerator(PlayerInteractEvent event) {
         if (!isEnabled()) {
@@ -112,21 +243,20 @@ public class CobbleGeneratorListener implements Listener {
         player.openInventory(inv);
     }
 
-    @EventHandler
+    @EventHandler(ignoreCancelled = true)
     public void onGeneratorBroken(BlockBreakEvent event) {
         if (!isEnabled()) {
             return;
         }
 
         Block block = event.getBlock();
+        manager.handleBlockChange(block);
         if (block.getType() != Material.BARREL) {
             return;
         }
 
-        manager.unregisterGenerator(block);
-
         // If you want to notify the breaker:
-        if (event.getPlayer() != null) {
+        if (manager.unregisterGenerator(block) && event.getPlayer() != null) {
             MessageUtil.info(event.getPlayer(),
                     "Cobblestone generator removed.");
         }
@@ -0,0 +1,38 @@
+package com.daytonjwatson.chunkfall.listener;
+
+import com.daytonjwatson.chunkfall.logic.EdgePhysicsGuard;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPhysicsEvent;
+
+/**
+ * Holds back block physics and fluid flow in and right next to freshly voided chunks
+ * (see EdgePhysicsGuard).
+ */
+public class EdgePhysicsListener implements Listener {
+
+    private final EdgePhysicsGuard guard;
+
+    public EdgePhysicsListener(EdgePhysicsGuard guard) {
+        this.guard = guard;
+    }
+
+    @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
+    public void onBlockPhysics(BlockPhysicsEvent event) {
+        if (guard.isGuarded(event.getBlock())) {
+            event.setCancelled(true);
+            guard.recordSuppressed();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent event) {
+        // Either end: flow out of an island into the void, or into the island from a voided chunk
+        if (guard.isGuarded(event.getToBlock()) || guard.isGuarded(event.getBlock())) {
+            event.setCancelled(true);
+            guard.recordSuppressed();
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package com.daytonjwatson.chunkfall.listener;
 
 import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
-import org.bukkit.Chunk;
-import org.bukkit.Material;
+import com.daytonjwatson.chunkfall.util.ChunkScanUtil;
 import org.bukkit.World;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
@@ -32,20 +31,7 @@ public class LimboChunkListener implements Listener {
             return;
         }
 
-        voidifyChunk(event.getChunk());
-    }
-
-    private void voidifyChunk(Chunk chunk) {
-        World world = chunk.getWorld();
-        int minY = world.getMinHeight();
-        int maxY = world.getMaxHeight();
-
-        for (int x = 0; x < 16; x++) {
-            for (int z = 0; z < 16; z++) {
-                for (int y = minY; y < maxY; y++) {
-                    chunk.getBlock(x, y, z).setType(Material.AIR, false);
-                }
-            }
-        }
+        // Same section-skipping, surface-bounded clear as ChunkProcessor, with nothing kept
+        ChunkScanUtil.clearChunk(event.getChunk(), null);
     }
 }
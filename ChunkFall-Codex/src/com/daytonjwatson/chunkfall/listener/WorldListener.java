@@ -0,0 +1,57 @@
+package com.daytonjwatson.chunkfall.listener;
+
+import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
+import com.daytonjwatson.chunkfall.generator.VoidingPopulator;
+import com.daytonjwatson.chunkfall.logic.ChunkLedgerManager;
+import com.daytonjwatson.chunkfall.logic.StructureIndex;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.world.WorldInitEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+public class WorldListener implements Listener {
+
+    private final ChunkFallConfig config;
+    private final VoidingPopulator voidingPopulator;
+    private final ChunkLedgerManager ledgers;
+    private final StructureIndex structureIndex;
+
+    public WorldListener(ChunkFallConfig config, VoidingPopulator voidingPopulator,
+                         ChunkLedgerManager ledgers, StructureIndex structureIndex) {
+        this.config = config;
+        this.voidingPopulator = voidingPopulator;
+        this.ledgers = ledgers;
+        this.structureIndex = structureIndex;
+    }
+
+    @EventHandler
+    public void onWorldInit(WorldInitEvent event) {
+        attachPopulator(event.getWorld());
+    }
+
+    @EventHandler
+    public void onWorldSave(WorldSaveEvent event) {
+        ledgers.flush(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        ledgers.close(event.getWorld());
+        structureIndex.forget(event.getWorld());
+    }
+
+    /**
+     * Hook the voiding populator into a target world. Safe to call more than once.
+     */
+    public void attachPopulator(World world) {
+        if (!config.isAsyncVoiding() || !config.isTargetWorld(world)) {
+            return;
+        }
+        if (!world.getPopulators().contains(voidingPopulator)) {
+            world.getPopulators().add(voidingPopulator);
+        }
+    }
+}
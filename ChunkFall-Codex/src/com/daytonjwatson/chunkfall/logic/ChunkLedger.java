@@ -0,0 +1,182 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk record of which chunks of one world ChunkFall has processed and protected.
+ *
+ * Chunks are grouped into ledger regions of 128x128 chunks. Each ledger region is one
+ * 4 KiB file holding two bitmaps (processed, protected) and is memory-mapped while in use,
+ * so a lookup is a bit test in a mapped page. Only a bounded number of regions stay mapped,
+ * which keeps memory constant no matter how many chunks the world has.
+ *
+ * Deliberately free of Bukkit types so the offline tools can read and write it too.
+ */
+public class ChunkLedger {
+
+    private static final int REGION_SHIFT = 7;                      // 128 chunks per side
+    private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+    private static final int CHUNKS_PER_REGION = 1 << (REGION_SHIFT * 2);
+    private static final int BITMAP_BYTES = CHUNKS_PER_REGION / 8;   // 2 KiB
+    private static final int FILE_BYTES = BITMAP_BYTES * 2;          // processed + protected
+
+    private static final int PROCESSED_OFFSET = 0;
+    private static final int PROTECTED_OFFSET = BITMAP_BYTES;
+
+    private static final int MAX_MAPPED_REGIONS = 256;               // 1 MiB of mapped bitmaps
+
+    private final File directory;
+    private final Logger logger;
+
+    // Access-ordered so the least recently used region is evicted first
+    private final LinkedHashMap<Long, ByteBuffer> regions = new LinkedHashMap<>(64, 0.75f, true);
+
+    // Chunk lookups are spatially coherent, so most hits never touch the map
+    private long lastRegionKey = Long.MIN_VALUE;
+    private ByteBuffer lastRegion;
+
+    private boolean warnedFallback;
+
+    /**
+     * Where a world keeps its ledger: {@code <world folder>/chunkfall/ledger}.
+     */
+    public static File directoryFor(File worldFolder) {
+        return new File(new File(worldFolder, "chunkfall"), "ledger");
+    }
+
+    public ChunkLedger(File directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    public synchronized boolean isProcessed(int cx, int cz) {
+        return testBit(cx, cz, PROCESSED_OFFSET);
+    }
+
+    /**
+     * @return true if the chunk was not marked processed before.
+     */
+    public synchronized boolean markProcessed(int cx, int cz) {
+        return setBit(cx, cz, PROCESSED_OFFSET);
+    }
+
+    public synchronized boolean isProtected(int cx, int cz) {
+        return testBit(cx, cz, PROTECTED_OFFSET);
+    }
+
+    /**
+     * @return true if the chunk was not marked protected before.
+     */
+    public synchronized boolean markProtected(int cx, int cz) {
+        return setBit(cx, cz, PROTECTED_OFFSET);
+    }
+
+    /**
+     * Force every mapped region to disk (WorldSaveEvent).
+     */
+    public synchronized void flush() {
+        for (ByteBuffer buffer : regions.values()) {
+            force(buffer);
+        }
+    }
+
+    /**
+     * Flush and drop all mappings (world unload / plugin disable).
+     */
+    public synchronized void close() {
+        flush();
+        regions.clear();
+        lastRegion = null;
+        lastRegionKey = Long.MIN_VALUE;
+    }
+
+    private boolean testBit(int cx, int cz, int offset) {
+        ByteBuffer region = region(cx >> REGION_SHIFT, cz >> REGION_SHIFT);
+        int bit = bitIndex(cx, cz);
+        return (region.get(offset + (bit >>> 3)) & (1 << (bit & 7))) != 0;
+    }
+
+    private boolean setBit(int cx, int cz, int offset) {
+        ByteBuffer region = region(cx >> REGION_SHIFT, cz >> REGION_SHIFT);
+        int bit = bitIndex(cx, cz);
+        int index = offset + (bit >>> 3);
+        byte current = region.get(index);
+        byte mask = (byte) (1 << (bit & 7));
+        if ((current & mask) != 0) {
+            return false;
+        }
+        region.put(index, (byte) (current | mask));
+        return true;
+    }
+
+    private static int bitIndex(int cx, int cz) {
+        return ((cz & REGION_MASK) << REGION_SHIFT) | (cx & REGION_MASK);
+    }
+
+    private ByteBuffer region(int regionX, int regionZ) {
+        long key = ChunkKeyUtil.chunkKey(regionX, regionZ);
+        if (key == lastRegionKey && lastRegion != null) {
+            return lastRegion;
+        }
+
+        ByteBuffer region = regions.get(key);
+        if (region == null) {
+            region = map(regionX, regionZ);
+            regions.put(key, region);
+            evictIfNeeded();
+        }
+
+        lastRegionKey = key;
+        lastRegion = region;
+        return region;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<Long, ByteBuffer>> it = regions.entrySet().iterator();
+        while (regions.size() > MAX_MAPPED_REGIONS && it.hasNext()) {
+            Map.Entry<Long, ByteBuffer> eldest = it.next();
+            force(eldest.getValue());
+            it.remove(); // the mapping is released once the buffer is collected
+        }
+    }
+
+    private ByteBuffer map(int regionX, int regionZ) {
+        File file = new File(directory, "l." + regionX + "." + regionZ + ".bits");
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                // Mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+            }
+        } catch (IOException e) {
+            // Keep working in memory for this run rather than voiding protected chunks
+            if (!warnedFallback) {
+                warnedFallback = true;
+                logger.log(Level.WARNING, "[ChunkFall] Could not map chunk ledger " + file
+                        + ", falling back to memory for this run.", e);
+            }
+            return ByteBuffer.allocate(FILE_BYTES);
+        }
+    }
+
+    private static void force(ByteBuffer buffer) {
+        if (buffer instanceof MappedByteBuffer mapped) {
+            mapped.force();
+        }
+    }
+}
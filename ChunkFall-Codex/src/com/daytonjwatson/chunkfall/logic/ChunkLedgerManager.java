@@ -0,0 +1,58 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import org.bukkit.Bukkit;
+import org.bukkit.generator.WorldInfo;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One {@link ChunkLedger} per world, stored in {@code <world folder>/chunkfall/ledger}.
+ */
+public class ChunkLedgerManager {
+
+    private final Plugin plugin;
+    private final Map<UUID, ChunkLedger> ledgers = new ConcurrentHashMap<>();
+
+    public ChunkLedgerManager(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Works with a plain WorldInfo so worldgen threads can use it too.
+     */
+    public ChunkLedger forWorld(WorldInfo world) {
+        return ledgers.computeIfAbsent(world.getUID(), uid -> new ChunkLedger(
+                ledgerDirectory(world.getName()),
+                plugin.getLogger()
+        ));
+    }
+
+    public void flush(WorldInfo world) {
+        ChunkLedger ledger = ledgers.get(world.getUID());
+        if (ledger != null) {
+            ledger.flush();
+        }
+    }
+
+    public void close(WorldInfo world) {
+        ChunkLedger ledger = ledgers.remove(world.getUID());
+        if (ledger != null) {
+            ledger.close();
+        }
+    }
+
+    public void closeAll() {
+        for (ChunkLedger ledger : ledgers.values()) {
+            ledger.close();
+        }
+        ledgers.clear();
+    }
+
+    private static File ledgerDirectory(String worldName) {
+        return ChunkLedger.directoryFor(new File(Bukkit.getWorldContainer(), worldName));
+    }
+}
@@ -1,30 +1,109 @@
 package com.daytonjwatson.chunkfall.logic;
 
 import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
+import com.daytonjwatson.chunkfall.util.ChunkKeySet;
 import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+import com.daytonjwatson.chunkfall.util.ChunkScanUtil;
+import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.GameRule;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.World.Environment;
-
-import java.util.HashSet;
-import java.util.Random;
-import java.util.Set;
+import org.bukkit.generator.LimitedRegion;
+import org.bukkit.generator.WorldInfo;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
 
 public class ChunkProcessor {
 
     private final ChunkFallConfig config;
+    private final IslandLayout islandLayout;
     private final OverworldProtection overworldProtection;
     private final NetherProtection netherProtection;
+    // Portal room / fortress room footprints, read from structure data
+    private final StructureIndex structureIndex;
+
+    // Persistent processed/protected bitmaps, one ledger per world
+    private final ChunkLedgerManager ledgers;
+
+    // Chunks the populator already voided that have not reached ChunkLoadEvent yet.
+    // A new chunk is only skipped if it is in here: after a crash the ledger can say
+    // "processed" for a chunk whose voided version was never saved and is being regenerated.
+    private final ChunkKeySet populatedChunks = new ChunkKeySet();
+    // The ones among them the populator voided (not kept or protected)
+    private final ChunkKeySet populatorVoided = new ChunkKeySet();
+
+    private final ChunkWorkQueue workQueue;
+
+    // Protection scans run on worker threads; the keep/void decision is applied on the main thread
+    private final ProtectionScanner protectionScanner;
+    // World -> chunk key -> chunks whose scan has not been applied yet (main thread only)
+    private final Map<UUID, Map<Long, PendingScan>> pendingScans = new HashMap<>();
 
-    private final Set<Long> processedChunks = new HashSet<>();
+    // Blocks kept when voiding, compiled from config per dimension
+    private final Map<Environment, PreserveTable> preserveTables = new EnumMap<>(Environment.class);
 
-    public ChunkProcessor(ChunkFallConfig config) {
+    // Removes leftover entities from voided chunks (null = off)
+    private final EntityPurge entityPurge;
+
+    // Physics held back around freshly voided chunks (null = off)
+    private final EdgePhysicsGuard edgePhysicsGuard;
+
+    private final Plugin plugin;
+
+    public ChunkProcessor(Plugin plugin, ChunkFallConfig config) {
+        this.plugin = plugin;
         this.config = config;
-        this.overworldProtection = new OverworldProtection(config);
-        this.netherProtection = new NetherProtection(config);
+        this.islandLayout = new IslandLayout(config);
+        this.ledgers = new ChunkLedgerManager(plugin);
+        this.structureIndex = new StructureIndex(plugin.getLogger());
+        this.overworldProtection = new OverworldProtection(config, ledgers, structureIndex);
+        this.netherProtection = new NetherProtection(config, structureIndex);
+        this.workQueue = new ChunkWorkQueue(plugin, config, this);
+        this.protectionScanner = new ProtectionScanner(config.getProtectionScanThreads());
+        this.edgePhysicsGuard = config.isEdgePhysicsEnabled() ? new EdgePhysicsGuard(plugin, config) : null;
+        this.entityPurge = config.isVoidPurgeEnabled()
+                ? new EntityPurge(config.getVoidPurgeKeepEntities(), plugin.getLogger())
+                : null;
+
+        for (Environment env : Environment.values()) {
+            preserveTables.put(env, PreserveTable.compile(config.getPreserveRules(env), plugin.getLogger()));
+        }
+    }
+
+    public void start() {
+        if (config.isChunkQueueEnabled()) {
+            workQueue.start();
+        }
+        if (edgePhysicsGuard != null) {
+            edgePhysicsGuard.start();
+        }
+    }
+
+    /**
+     * Void anything still waiting in the queue or on a scan (plugin disable).
+     */
+    public void shutdown() {
+        workQueue.drainAll();
+        applyAllPendingScans();
+        if (edgePhysicsGuard != null) {
+            edgePhysicsGuard.stop();
+        }
+        protectionScanner.shutdown();
+        ledgers.closeAll();
     }
 
     public void handleChunkLoad(Chunk chunk) {
@@ -32,31 +111,76 @@ public class ChunkProcessor {
         int cx = chunk.getX();
         int cz = chunk.getZ();
 
-        long key = ChunkKeyUtil.chunkKey(world, cx, cz);
-        if (!processedChunks.add(key)) {
-            return; // already processed this chunk in this server run
+        if (populatedChunks.remove(world, cx, cz)) {
+            // Already decided by the populator. A voided chunk is swept once more: neighbours
+            // populated after it may have written trees, ores or structure pieces across the
+            // border, and all 8 have been populated by the time it loads. Mostly empty
+            // sections by now, so the sweep is cheap
+            if (populatorVoided.remove(world, cx, cz)) {
+                makeChunkVoid(chunk);
+            }
+            return;
+        }
+
+        if (config.isChunkQueueEnabled()) {
+            workQueue.enqueue(chunk);
+            return;
         }
 
-        int regionX = Math.floorDiv(cx, config.getRegionSizeChunks());
-        int regionZ = Math.floorDiv(cz, config.getRegionSizeChunks());
-        int[] kept = getKeptChunkInRegion(world, regionX, regionZ);
+        processChunk(chunk, islandLayout.keptChunkFor(world, islandLayout.regionOf(cx), islandLayout.regionOf(cz)));
+    }
+
+    /**
+     * A queued chunk must never be saved or sent out un-voided, so finish it before it unloads.
+     */
+    public void handleChunkUnload(Chunk chunk) {
+        workQueue.flush(chunk);
+
+        PendingScan pending = removePendingScan(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        if (pending != null) {
+            applyScan(pending); // waits for the worker if it is still scanning
+        }
+    }
+
+    /**
+     * Keep/protect/void a loaded chunk. {@code kept} is its region's island chunk (packed key), passed in
+     * so the work queue can compute it once per region.
+     *
+     * The structure index settles almost every chunk right here. Only fortress rooms that may
+     * hold nether wart cost a snapshot; the decision is then applied by
+     * {@link #applyScan(PendingScan)} once the scan is done.
+     */
+    void processChunk(Chunk chunk, long kept) {
+        World world = chunk.getWorld();
+        int cx = chunk.getX();
+        int cz = chunk.getZ();
+
+        ledgers.forWorld(world).markProcessed(cx, cz);
 
         Environment env = world.getEnvironment();
+        boolean island = ChunkKeyUtil.chunkKey(cx, cz) == kept;
 
         // Overworld: protect End Portal + neighbors
-        if (env == Environment.NORMAL &&
-                overworldProtection.shouldProtectOverworldChunk(world, chunk, key)) {
+        if (env == Environment.NORMAL && config.isProtectEndPortalRoom() &&
+                overworldProtection.shouldProtectOverworldChunk(world, chunk.getStructures(), cx, cz)) {
             return;
         }
 
         // Nether: protect blaze spawner / nether wart chunks
-        if (env == Environment.NETHER &&
-                netherProtection.shouldProtectNetherChunk(chunk)) {
-            return;
+        if (env == Environment.NETHER && netherProtection.isEnabled() && !island) {
+            StructureIndex.Match match = netherProtection.matchFortress(world, chunk.getStructures(), cx, cz);
+            if (match == StructureIndex.Match.PROTECTED) {
+                return;
+            }
+            // Wart room or castle entrance: palette first, scan only if it may hold wart
+            if (match == StructureIndex.Match.CANDIDATE && netherProtection.mayContainNetherWart(chunk)) {
+                startScan(chunk, netherProtection.scan(protectionScanner, world, snapshotOf(chunk)));
+                return;
+            }
         }
 
         // Keep the island chunk
-        if (cx == kept[0] && cz == kept[1]) {
+        if (island) {
             return;
         }
 
@@ -64,11 +188,123 @@ public class ChunkProcessor {
         makeChunkVoid(chunk);
     }
 
+    private static ChunkSnapshot snapshotOf(Chunk chunk) {
+        // Block types only: no heightmap, biomes or temperatures needed
+        return chunk.getChunkSnapshot(false, false, false);
+    }
+
+    private void startScan(Chunk chunk, CompletableFuture<ProtectionScanner.ScanResult> scan) {
+        PendingScan pending = new PendingScan(chunk, scan);
+        pendingScans.computeIfAbsent(chunk.getWorld().getUID(), uid -> new HashMap<>())
+                .put(ChunkKeyUtil.chunkKey(chunk.getX(), chunk.getZ()), pending);
+
+        scan.whenComplete((result, error) -> Bukkit.getScheduler().runTask(plugin, () -> {
+            // Skip if an unload or shutdown already applied it
+            if (removePendingScan(chunk.getWorld(), chunk.getX(), chunk.getZ()) == pending) {
+                applyScan(pending);
+            }
+        }));
+    }
+
+    /**
+     * Main thread: keep/protect/void a chunk from its finished scan, all in one step.
+     */
+    private void applyScan(PendingScan pending) {
+        Chunk chunk = pending.chunk;
+        World world = chunk.getWorld();
+        int cx = chunk.getX();
+        int cz = chunk.getZ();
+
+        ProtectionScanner.ScanResult result;
+        try {
+            result = pending.scan.join();
+        } catch (CompletionException | CancellationException e) {
+            // Never void a chunk we could not check
+            plugin.getLogger().log(Level.WARNING, "[ChunkFall] Protection scan failed for chunk "
+                    + cx + "," + cz + " in " + world.getName() + ", keeping it.", e);
+            return;
+        }
+
+        if (netherProtection.shouldProtectNetherChunk(result)) {
+            return;
+        }
+
+        makeChunkVoid(chunk);
+    }
+
+    private PendingScan removePendingScan(World world, int cx, int cz) {
+        Map<Long, PendingScan> worldScans = pendingScans.get(world.getUID());
+        if (worldScans == null) {
+            return null;
+        }
+        PendingScan pending = worldScans.remove(ChunkKeyUtil.chunkKey(cx, cz));
+        if (worldScans.isEmpty()) {
+            pendingScans.remove(world.getUID());
+        }
+        return pending;
+    }
+
+    private void applyAllPendingScans() {
+        List<PendingScan> remaining = new ArrayList<>();
+        for (Map<Long, PendingScan> worldScans : pendingScans.values()) {
+            remaining.addAll(worldScans.values());
+        }
+        pendingScans.clear();
+
+        for (PendingScan pending : remaining) {
+            applyScan(pending);
+        }
+    }
+
+    /**
+     * Number of chunks waiting for a protection scan.
+     */
+    public int getPendingScanCount() {
+        int count = 0;
+        for (Map<Long, PendingScan> worldScans : pendingScans.values()) {
+            count += worldScans.size();
+        }
+        return count;
+    }
+
+    /**
+     * Same decisions as {@link #processChunk(Chunk, long)}, but made on a worldgen worker thread
+     * while the chunk is still being decorated. Chunks handled here are already void by the
+     * time ChunkLoadEvent fires, so the main thread skips them.
+     */
+    public void handleChunkPopulate(WorldInfo world, int cx, int cz, LimitedRegion region) {
+        // A chunk being generated is new by definition, whatever the ledger says
+        populatedChunks.add(world, cx, cz);
+        ledgers.forWorld(world).markProcessed(cx, cz);
+
+        Environment env = world.getEnvironment();
+
+        // Overworld: protect End Portal + neighbors
+        if (env == Environment.NORMAL && config.isProtectEndPortalRoom() &&
+                overworldProtection.shouldProtectOverworldChunk(world, region.getStructures(cx, cz), cx, cz)) {
+            return;
+        }
+
+        // Nether: protect blaze spawner / nether wart chunks
+        if (env == Environment.NETHER &&
+                netherProtection.shouldProtectNetherChunk(world, region, cx, cz)) {
+            return;
+        }
+
+        // Keep the island chunk
+        if (islandLayout.isIslandChunk(world, cx, cz)) {
+            return;
+        }
+
+        populatorVoided.add(world, cx, cz);
+        makeChunkVoid(world, region, cx, cz);
+    }
+
     public void ensureSpawnOnIsland(World world) {
         // Region (0,0) forced to keep chunk (0,0) so fresh worlds never spawn in void
-        int[] kept = getKeptChunkInRegion(world, 0, 0);
-        int keptChunkX = kept[0];
-        int keptChunkZ = kept[1];
+        long kept = islandLayout.keptChunkFor(world, 0, 0);
+        int keptChunkX = ChunkKeyUtil.keyX(kept);
+        int keptChunkZ = ChunkKeyUtil.keyZ(kept);
 
         Chunk islandChunk = world.getChunkAt(keptChunkX, keptChunkZ);
         islandChunk.load(true);
@@ -91,69 +327,66 @@ public class ChunkProcessor {
         world.setGameRule(GameRule.SPAWN_RADIUS, 0);
     }
 
-    private int[] getKeptChunkInRegion(World world, int regionX, int regionZ) {
-        // Special case: region (0,0) always keeps chunk (0,0) so fresh worlds never spawn in void
-        if (regionX == 0 && regionZ == 0) {
-            return new int[]{0, 0};
+    /**
+     * Void the chunk, but keep the blocks the dimension's preserve rules ask for.
+     * Only non-air blocks below each column's surface are visited.
+     */
+    private void makeChunkVoid(Chunk chunk) {
+        PreserveTable preserve = preserveTableFor(chunk.getWorld());
+        if (edgePhysicsGuard != null) {
+            // Before the first block changes, so no update it triggers gets through
+            edgePhysicsGuard.markVoided(chunk.getWorld(), chunk.getX(), chunk.getZ());
         }
 
-        long seed = world.getSeed()
-                ^ (regionX * 341873128712L)
-                ^ (regionZ * 132897987541L);
-
-        Random random = new Random(seed);
-        int regionSize = config.getRegionSizeChunks();
-        int offsetX = random.nextInt(regionSize);
-        int offsetZ = random.nextInt(regionSize);
+        ChunkScanUtil.clearChunk(chunk, (x, y, z, type) -> {
+            int decision = preserve.classify(type, y);
+            return decision == PreserveTable.KEEP
+                    || decision == PreserveTable.CHECK_STATE
+                    && preserve.matches(type, y, chunk.getBlock(x, y, z).getBlockData());
+        });
 
-        return new int[]{
-                regionX * regionSize + offsetX,
-                regionZ * regionSize + offsetZ
-        };
+        if (entityPurge != null) {
+            entityPurge.purge(chunk);
+        }
     }
 
     /**
-     * Void the chunk, but keep certain blocks depending on dimension.
-     * In the Nether we keep NETHER_BRICKS in otherwise-void chunks.
+     * LimitedRegion variant of {@link #makeChunkVoid(Chunk)}. Writes go straight into the
+     * chunk being generated, so there are no physics or client updates to worry about.
      */
-    private void makeChunkVoid(Chunk chunk) {
-        World world = chunk.getWorld();
-        int minY = world.getMinHeight();
-        int maxY = world.getMaxHeight();
+    private void makeChunkVoid(WorldInfo world, LimitedRegion region, int cx, int cz) {
+        PreserveTable preserve = preserveTableFor(world);
+
+        ChunkScanUtil.forEachBlock(world, region, cx, cz, (x, y, z, type) -> {
+            int decision = preserve.classify(type, y);
+            if (decision == PreserveTable.KEEP
+                    || decision == PreserveTable.CHECK_STATE
+                    && preserve.matches(type, y, region.getBlockData(x, y, z))) {
+                return;
+            }
 
-        Environment env = world.getEnvironment();
+            region.setType(x, y, z, Material.AIR);
+        });
+
+        if (entityPurge != null) {
+            entityPurge.purge(region, cx, cz);
+        }
+    }
 
-        for (int x = 0; x < 16; x++) {
-            for (int z = 0; z < 16; z++) {
-                for (int y = minY; y < maxY; y++) {
-                    Material type = chunk.getBlock(x, y, z).getType();
+    private PreserveTable preserveTableFor(WorldInfo world) {
+        return preserveTables.get(world.getEnvironment());
+    }
 
-                    // Decide whether to preserve this block when voiding
-                    if (shouldPreserveInVoid(env, type)) {
-                        continue; // leave the block as-is
-                    }
+    public IslandLayout getIslandLayout() {
+        return islandLayout;
+    }
 
-                    // Otherwise, clear it
-                    chunk.getBlock(x, y, z).setType(Material.AIR, false);
-                }
-            }
-        }
+    public ChunkLedgerManager getLedgers() {
+        return ledgers;
     }
 
-    /**
-     * Decide which blocks to keep when voiding a chunk.
-     * Currently:
-     *  - Nether: keep NETHER_BRICKS
-     *  - Overworld/other: keep nothing
-     */
-    private boolean shouldPreserveInVoid(Environment env, Material type) {
-    	if (env == Environment.NETHER) {
-    	    return type == Material.NETHER_BRICKS
-    	        || type == Material.NETHER_BRICK_FENCE
-    	        || type == Material.NETHER_BRICK_STAIRS
-    	        || type == Material.NETHER_BRICK_SLAB;
-    	}
-        return false;
+    public ChunkWorkQueue getWorkQueue() {
+        return workQueue;
     }
 
     public OverworldProtection getOverworldProtection() {
@@ -163,4 +396,36 @@ public class ChunkProcessor {
     public NetherProtection getNetherProtection() {
         return netherProtection;
     }
+
+    public StructureIndex getStructureIndex() {
+        return structureIndex;
+    }
+
+    public ProtectionScanner getProtectionScanner() {
+        return protectionScanner;
+    }
+
+    /**
+     * Null when edge-physics is off.
+     */
+    public EdgePhysicsGuard getEdgePhysicsGuard() {
+        return edgePhysicsGuard;
+    }
+
+    /**
+     * Null when void-purge is off.
+     */
+    public EntityPurge getEntityPurge() {
+        return entityPurge;
+    }
+
+    private static class PendingScan {
+        final Chunk chunk;
+        final CompletableFuture<ProtectionScanner.ScanResult> scan;
+
+        PendingScan(Chunk chunk, CompletableFuture<ProtectionScanner.ScanResult> scan) {
+            this.chunk = chunk;
+            this.scan = scan;
+        }
+    }
 }
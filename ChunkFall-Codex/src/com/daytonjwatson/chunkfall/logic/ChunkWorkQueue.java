@@ -0,0 +1,320 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
+import com.daytonjwatson.chunkfall.util.ChunkKeySet;
+import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Spreads main-thread chunk voiding over several ticks.
+ *
+ * New chunks are grouped by island region so the kept chunk is computed once per region,
+ * and each tick drains the region closest to a player first until the per-tick budget is
+ * spent. Two safety valves keep chunks from staying un-voided for long:
+ *  - chunks older than max-wait-ticks are processed regardless of the budget
+ *  - once the backlog reaches max-backlog, new chunks are processed synchronously
+ */
+public class ChunkWorkQueue {
+
+    private final Plugin plugin;
+    private final ChunkFallConfig config;
+    private final ChunkProcessor processor;
+
+    // World -> region key -> pending chunks of that region
+    private final Map<UUID, Map<Long, RegionBatch>> batches = new HashMap<>();
+    // Chunks currently waiting, so a chunk is never queued twice
+    private final ChunkKeySet queuedChunks = new ChunkKeySet();
+
+    private long currentTick;
+    private int backlog;
+    private int peakBacklog;
+    private long synchronousFallbacks;
+
+    public ChunkWorkQueue(Plugin plugin, ChunkFallConfig config, ChunkProcessor processor) {
+        this.plugin = plugin;
+        this.config = config;
+        this.processor = processor;
+    }
+
+    public void start() {
+        plugin.getLogger().info("[ChunkFall] Chunk work queue started, budget=" +
+                config.getChunkQueueTickBudgetMs() + "ms/tick, max backlog=" + config.getChunkQueueMaxBacklog() + ".");
+
+        Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    public void enqueue(Chunk chunk) {
+        World world = chunk.getWorld();
+        int cx = chunk.getX();
+        int cz = chunk.getZ();
+
+        IslandLayout layout = processor.getIslandLayout();
+        int regionX = layout.regionOf(cx);
+        int regionZ = layout.regionOf(cz);
+
+        // Hard cap: don't let the backlog grow without bound, fall back to the old behavior
+        if (backlog >= config.getChunkQueueMaxBacklog()) {
+            synchronousFallbacks++;
+            processor.processChunk(chunk, layout.keptChunkFor(world, regionX, regionZ));
+            return;
+        }
+
+        if (!queuedChunks.add(world, cx, cz)) {
+            return;
+        }
+
+        Map<Long, RegionBatch> worldBatches = batches.computeIfAbsent(world.getUID(), uid -> new HashMap<>());
+        long regionKey = ChunkKeyUtil.chunkKey(regionX, regionZ);
+        RegionBatch batch = worldBatches.get(regionKey);
+        if (batch == null) {
+            batch = new RegionBatch(world, regionX, regionZ);
+            worldBatches.put(regionKey, batch);
+        }
+        batch.chunks.add(new PendingChunk(chunk, currentTick));
+
+        backlog++;
+        if (backlog > peakBacklog) {
+            peakBacklog = backlog;
+        }
+    }
+
+    /**
+     * Process a chunk right now if it is still waiting (e.g. it is about to unload).
+     */
+    public void flush(Chunk chunk) {
+        World world = chunk.getWorld();
+        int cx = chunk.getX();
+        int cz = chunk.getZ();
+
+        if (!queuedChunks.contains(world, cx, cz)) {
+            return;
+        }
+
+        Map<Long, RegionBatch> worldBatches = batches.get(world.getUID());
+        if (worldBatches == null) {
+            return;
+        }
+
+        IslandLayout layout = processor.getIslandLayout();
+        long regionKey = ChunkKeyUtil.chunkKey(layout.regionOf(cx), layout.regionOf(cz));
+        RegionBatch batch = worldBatches.get(regionKey);
+        if (batch == null) {
+            return;
+        }
+
+        Iterator<PendingChunk> it = batch.chunks.iterator();
+        while (it.hasNext()) {
+            PendingChunk pending = it.next();
+            if (pending.chunk.getX() == cx && pending.chunk.getZ() == cz) {
+                it.remove();
+                process(batch, pending);
+                break;
+            }
+        }
+
+        if (batch.chunks.isEmpty()) {
+            removeBatch(batch);
+        }
+    }
+
+    /**
+     * Process everything that is still waiting, ignoring the budget.
+     */
+    public void drainAll() {
+        for (Map<Long, RegionBatch> worldBatches : batches.values()) {
+            for (RegionBatch batch : worldBatches.values()) {
+                for (PendingChunk pending : batch.chunks) {
+                    process(batch, pending);
+                }
+            }
+        }
+        batches.clear();
+        queuedChunks.clear();
+        backlog = 0;
+    }
+
+    private void tick() {
+        currentTick++;
+
+        if (batches.isEmpty()) {
+            return;
+        }
+
+        // 1) Overdue chunks go out no matter what the budget says
+        long overdueBefore = currentTick - config.getChunkQueueMaxWaitTicks();
+        Iterator<Map<Long, RegionBatch>> worldIt = batches.values().iterator();
+        while (worldIt.hasNext()) {
+            Map<Long, RegionBatch> worldBatches = worldIt.next();
+            Iterator<RegionBatch> batchIt = worldBatches.values().iterator();
+            while (batchIt.hasNext()) {
+                RegionBatch batch = batchIt.next();
+                Iterator<PendingChunk> it = batch.chunks.iterator();
+                while (it.hasNext()) {
+                    PendingChunk pending = it.next();
+                    if (pending.enqueuedTick <= overdueBefore) {
+                        it.remove();
+                        process(batch, pending);
+                    }
+                }
+                if (batch.chunks.isEmpty()) {
+                    batchIt.remove();
+                }
+            }
+            if (worldBatches.isEmpty()) {
+                worldIt.remove();
+            }
+        }
+
+        // 2) Spend the remaining budget on the regions nearest to players
+        long deadline = System.nanoTime() + (long) (config.getChunkQueueTickBudgetMs() * 1_000_000L);
+        Map<World, List<int[]>> playerChunks = collectPlayerChunks();
+
+        while (!batches.isEmpty() && System.nanoTime() < deadline) {
+            RegionBatch batch = nearestBatch(playerChunks);
+            List<int[]> players = playerChunks.get(batch.world);
+
+            if (players != null) {
+                batch.chunks.sort((a, b) -> Long.compare(
+                        distanceToPlayers(a.chunk.getX(), a.chunk.getZ(), players),
+                        distanceToPlayers(b.chunk.getX(), b.chunk.getZ(), players)));
+            }
+
+            Iterator<PendingChunk> it = batch.chunks.iterator();
+            while (it.hasNext() && System.nanoTime() < deadline) {
+                PendingChunk pending = it.next();
+                it.remove();
+                process(batch, pending);
+            }
+
+            if (batch.chunks.isEmpty()) {
+                removeBatch(batch);
+            }
+        }
+    }
+
+    private void process(RegionBatch batch, PendingChunk pending) {
+        queuedChunks.remove(batch.world, pending.chunk.getX(), pending.chunk.getZ());
+        backlog--;
+        processor.processChunk(pending.chunk, batch.getKept(processor));
+    }
+
+    private void removeBatch(RegionBatch batch) {
+        Map<Long, RegionBatch> worldBatches = batches.get(batch.world.getUID());
+        if (worldBatches == null) {
+            return;
+        }
+        worldBatches.remove(ChunkKeyUtil.chunkKey(batch.regionX, batch.regionZ));
+        if (worldBatches.isEmpty()) {
+            batches.remove(batch.world.getUID());
+        }
+    }
+
+    private Map<World, List<int[]>> collectPlayerChunks() {
+        Map<World, List<int[]>> result = new HashMap<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Location loc = player.getLocation();
+            result.computeIfAbsent(loc.getWorld(), w -> new ArrayList<>())
+                    .add(new int[]{loc.getBlockX() >> 4, loc.getBlockZ() >> 4});
+        }
+        return result;
+    }
+
+    private RegionBatch nearestBatch(Map<World, List<int[]>> playerChunks) {
+        int regionSize = config.getRegionSizeChunks();
+        int half = regionSize / 2;
+
+        RegionBatch best = null;
+        long bestDist = Long.MAX_VALUE;
+
+        for (Map<Long, RegionBatch> worldBatches : batches.values()) {
+            for (RegionBatch batch : worldBatches.values()) {
+                List<int[]> players = playerChunks.get(batch.world);
+                long dist = players == null
+                        ? Long.MAX_VALUE - 1
+                        : distanceToPlayers(batch.regionX * regionSize + half, batch.regionZ * regionSize + half, players);
+
+                if (best == null || dist < bestDist) {
+                    best = batch;
+                    bestDist = dist;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static long distanceToPlayers(int cx, int cz, List<int[]> players) {
+        long best = Long.MAX_VALUE;
+        for (int[] p : players) {
+            long dx = cx - p[0];
+            long dz = cz - p[1];
+            long d = dx * dx + dz * dz;
+            if (d < best) {
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Number of chunks currently waiting to be processed.
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public int getPeakBacklog() {
+        return peakBacklog;
+    }
+
+    /**
+     * How often the hard cap forced a chunk to be processed synchronously.
+     */
+    public long getSynchronousFallbacks() {
+        return synchronousFallbacks;
+    }
+
+    private static class RegionBatch {
+        final World world;
+        final int regionX;
+        final int regionZ;
+        final List<PendingChunk> chunks = new ArrayList<>();
+        long kept;
+        boolean keptKnown;
+
+        RegionBatch(World world, int regionX, int regionZ) {
+            this.world = world;
+            this.regionX = regionX;
+            this.regionZ = regionZ;
+        }
+
+        long getKept(ChunkProcessor processor) {
+            if (!keptKnown) {
+                kept = processor.getIslandLayout().keptChunkFor(world, regionX, regionZ);
+                keptKnown = true;
+            }
+            return kept;
+        }
+    }
+
+    private static class PendingChunk {
+        final Chunk chunk;
+        final long enqueuedTick;
+
+        PendingChunk(Chunk chunk, long enqueuedTick) {
+            this.chunk = chunk;
+            this.enqueuedTick = enqueuedTick;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.Damageable;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToIntFunction;
+
+/**
+ * One generator wake's worth of inventory work. The barrel is read in a single pass up front;
+ * each cobble then only moves counters (output room, fuel, pick damage), and {@link #commit()}
+ * writes the slots that changed once, instead of scanning the barrel and rewriting the
+ * pickaxe meta for every cobble.
+ *
+ * Follows the old per-cobble rules: cobble stacks onto existing cobble first, then fills
+ * empty slots; fuel is taken from the first fuel stack after slot 0; Unbreaking gives each
+ * use a 1 / (level + 1) chance to cost durability.
+ */
+public class CobbleBatch {
+
+    private static final int PICK_SLOT = 0;
+
+    private final Inventory inv;
+    private final ToIntFunction<Material> fuelUses;
+
+    // Planned contents; null = empty
+    private final ItemStack[] contents;
+    private final boolean[] changed;
+    private final int cobbleMax = Material.COBBLESTONE.getMaxStackSize();
+
+    private int roomLeft;
+    // Next slots to look at for output / fuel; both only move forward
+    private int stackSlot = 1;
+    private int emptySlot = 1;
+    private int fuelSlot = 1;
+    private int fuelBuffered;
+
+    private final ItemStack pick;
+    private final ItemMeta pickMeta;
+    private final int unbreaking;
+    private int pickDamage;
+    private boolean pickBroke;
+
+    public CobbleBatch(Inventory inv, int fuelBuffered, ToIntFunction<Material> fuelUses) {
+        this.inv = inv;
+        this.fuelUses = fuelUses;
+        this.fuelBuffered = fuelBuffered;
+
+        contents = inv.getContents();
+        changed = new boolean[contents.length];
+        for (int slot = 1; slot < contents.length; slot++) {
+            ItemStack stack = contents[slot];
+            if (stack == null || stack.getType() == Material.AIR) {
+                contents[slot] = null;
+                roomLeft += cobbleMax;
+            } else if (stack.getType() == Material.COBBLESTONE) {
+                roomLeft += Math.max(0, stack.getMaxStackSize() - stack.getAmount());
+            }
+        }
+
+        pick = contents.length > PICK_SLOT ? contents[PICK_SLOT] : null;
+        pickMeta = pick != null ? pick.getItemMeta() : null;
+        unbreaking = pick != null ? pick.getEnchantmentLevel(Enchantment.UNBREAKING) : 0;
+        pickDamage = pickMeta instanceof Damageable damageable ? damageable.getDamage() : 0;
+    }
+
+    public boolean hasRoom() {
+        return roomLeft > 0;
+    }
+
+    /**
+     * Take one fuel use: a buffered one, or a new item from the barrel.
+     *
+     * @return false if there is no fuel
+     */
+    public boolean takeFuel() {
+        if (fuelBuffered > 0) {
+            fuelBuffered--;
+            return true;
+        }
+        for (; fuelSlot < contents.length; fuelSlot++) {
+            ItemStack stack = contents[fuelSlot];
+            if (stack == null || !stack.getType().isFuel()) {
+                continue;
+            }
+            int uses = fuelUses.applyAsInt(stack.getType());
+            if (uses <= 0) {
+                continue;
+            }
+
+            changed[fuelSlot] = true;
+            if (stack.getAmount() <= 1) {
+                // The emptied slot can take output, as it could before
+                contents[fuelSlot] = null;
+                roomLeft += cobbleMax;
+                emptySlot = Math.min(emptySlot, fuelSlot);
+            } else {
+                stack.setAmount(stack.getAmount() - 1);
+            }
+            fuelBuffered = uses - 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Put one cobble in the barrel; check {@link #hasRoom()} first.
+     */
+    public void addCobble() {
+        roomLeft--;
+
+        for (; stackSlot < contents.length; stackSlot++) {
+            ItemStack stack = contents[stackSlot];
+            if (stack != null && stack.getType() == Material.COBBLESTONE
+                    && stack.getAmount() < stack.getMaxStackSize()) {
+                stack.setAmount(stack.getAmount() + 1);
+                changed[stackSlot] = true;
+                return;
+            }
+        }
+        for (; emptySlot < contents.length; emptySlot++) {
+            if (contents[emptySlot] == null) {
+                contents[emptySlot] = new ItemStack(Material.COBBLESTONE, 1);
+                changed[emptySlot] = true;
+                // Later cobble stacks onto this one first
+                stackSlot = Math.min(stackSlot, emptySlot);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wear the pickaxe for one cobble.
+     *
+     * @return false if it broke
+     */
+    public boolean usePick() {
+        if (!(pickMeta instanceof Damageable)) {
+            return true;
+        }
+        if (unbreaking > 0 && ThreadLocalRandom.current().nextDouble() >= 1.0 / (unbreaking + 1)) {
+            return true;
+        }
+        pickDamage++;
+        changed[PICK_SLOT] = true;
+        if (pickDamage >= pick.getType().getMaxDurability()) {
+            pickBroke = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write every changed slot back to the barrel.
+     */
+    public void commit() {
+        if (changed[PICK_SLOT]) {
+            if (pickBroke) {
+                contents[PICK_SLOT] = null;
+            } else {
+                ((Damageable) pickMeta).setDamage(pickDamage);
+                pick.setItemMeta(pickMeta);
+            }
+        }
+        for (int slot = 0; slot < contents.length; slot++) {
+            if (changed[slot]) {
+                inv.setItem(slot, contents[slot]);
+            }
+        }
+    }
+
+    public int getFuelBuffered() {
+        return fuelBuffered;
+    }
+
+    public boolean isPickBroken() {
+        return pickBroke;
+    }
+}
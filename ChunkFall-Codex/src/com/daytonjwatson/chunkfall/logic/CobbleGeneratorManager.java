@@ -2,6 +2,7 @@ package com.daytonjwatson.chunkfall.logic;
 
 import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.Particle;
@@ -13,28 +14,74 @@ import org.bukkit.block.Container;
 import org.bukkit.enchantments.Enchantment;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.Damageable;
-import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.plugin.Plugin;
-
-import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
 
 public class CobbleGeneratorManager {
 
     private final Plugin plugin;
     private final ChunkFallConfig config;
 
-    // Barrels acting as generators
-    private final Set<Location> generators = new HashSet<>();
-    // Per-generator progress counter (how close we are to next cobble)
-    private final Map<Location, Double> progress = new HashMap<>();
-    // Per-generator remaining "uses" of the currently consumed fuel item
-    private final Map<Location, Integer> fuelUsesRemaining = new HashMap<>();
+    // Every generator's state, one row each (progress, fuel uses left, clock, schedule...)
+    private final GeneratorTable table = new GeneratorTable();
+    // Generator rows bucketed by chunk
+    private final GeneratorIndex index = new GeneratorIndex(table);
+    // Stone positions of chunks with generators, shared by the generators in a chunk
+    private final StoneIndex stoneIndex;
+
+    // Survives restarts; changed rows are journaled every save interval, written behind on
+    // the store's own thread
+    private final GeneratorStore store;
+    private int saveTicks;
+    // Stored generators of worlds that are not loaded yet (STARTUP plugin: none are at enable)
+    private final Map<UUID, List<GeneratorStore.Entry>> unloaded = new HashMap<>();
+
+    private BukkitTask task;
+
+    // Below this, float error in progress is rounded away so a due cobble is not a tick late
+    private static final double EPSILON = 1e-9;
+    // Catch-up credit mined per wake at most (one stack); the rest follows on the next ticks,
+    // so a generator back from a long absence never blows the tick budget on its own
+    private static final double CATCH_UP_PER_WAKE = 64.0;
+
+    // Each generator wakes only on the tick its next cobble is due (or a retry after a stall);
+    // table.dueAt holds the tick wanted, wheel entries for any other tick are stale
+    private final TimingWheel wheel = new TimingWheel();
+    private final IntConsumer onDue = this::onDue;
+    private final ToIntFunction<Material> fuelUses = this::getFuelUses;
+    private long now;
+
+    private int period;
+    private long budgetNanos;
+    // Credit generators in unloaded chunks for the world time they were away, up to a cap
+    private boolean catchUp;
+    private long maxOfflineTicks;
+    // Woken generators that did not fit in a tick's budget yet (ring buffer of rows)
+    private int[] backlog = new int[64];
+    private int backlogHead;
+    private int backlogSize;
+    private int queuedCount;
 
     public CobbleGeneratorManager(Plugin plugin, ChunkFallConfig config) {
         this.plugin = plugin;
         this.config = config;
+        this.stoneIndex = new StoneIndex(plugin);
+        this.store = new GeneratorStore(
+                new File(plugin.getDataFolder(), "generators.journal"),
+                plugin.getLogger()
+        );
     }
 
     public void start() {
@@ -42,35 +89,234 @@ public class CobbleGeneratorManager {
             return;
         }
 
-        long period = config.getCobbleGeneratorTicksPerCobble();
-        if (period <= 0L) {
-            period = 20L;
+        period = config.getCobbleGeneratorTicksPerCobble();
+        if (period <= 0) {
+            period = 20;
+        }
+        budgetNanos = config.getCobbleTickBudgetMicros() * 1000L;
+        catchUp = config.isCobbleOfflineCatchUp();
+        maxOfflineTicks = config.getCobbleOfflineMaxHours() * 72000L;
+        saveTicks = Math.max(1, config.getCobbleSaveIntervalSeconds() * 20);
+
+        if (loadGenerators()) {
+            store.start();
         }
 
-        plugin.getLogger().info("[ChunkFall] Cobblestone generator task started, base period=" + period + " ticks.");
+        plugin.getLogger().info("[ChunkFall] Cobblestone generator task started, base period=" + period
+                + " ticks, budget=" + config.getCobbleTickBudgetMicros() + " us/tick.");
 
-        Bukkit.getScheduler().runTaskTimer(plugin, this::tickGenerators, period, period);
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::tickGenerators, 1L, 1L);
+    }
+
+    /**
+     * Stop ticking and write every pending change (plugin disable).
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        backlogSize = 0;
+        saveChanges();
+        store.close();
+    }
+
+    /**
+     * @return false if the store could not be loaded; it must not be written to then
+     */
+    private boolean loadGenerators() {
+        long start = System.nanoTime();
+        Collection<GeneratorStore.Entry> entries;
+        try {
+            entries = store.load();
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "[ChunkFall] Could not load cobble generators; "
+                    + "changes this session will not be saved.", e);
+            return false;
+        }
+
+        for (GeneratorStore.Entry entry : entries) {
+            unloaded.computeIfAbsent(entry.getKey().getWorld(), uid -> new ArrayList<>()).add(entry);
+        }
+        for (World world : Bukkit.getWorlds()) {
+            attachWorld(world);
+        }
+
+        plugin.getLogger().info("[ChunkFall] Loaded " + entries.size() + " cobble generators in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        return true;
+    }
+
+    /**
+     * Bring back the stored generators of a world that just loaded.
+     */
+    public void attachWorld(World world) {
+        List<GeneratorStore.Entry> entries = unloaded.remove(world.getUID());
+        if (entries == null) {
+            return;
+        }
+        for (GeneratorStore.Entry entry : entries) {
+            GeneratorStore.Key key = entry.getKey();
+            int row = table.add(world, key.getX(), key.getY(), key.getZ());
+            if (row < 0) {
+                continue;
+            }
+            table.progress[row] = entry.getProgress();
+            table.fuel[row] = entry.getFuelUses();
+            table.rate[row] = entry.getRate();
+            table.offlineSince[row] = entry.getOfflineSince();
+            index.add(row, world.isChunkLoaded(key.getX() >> 4, key.getZ() >> 4));
+            if (index.isActive(row)) {
+                resume(row);
+            } else if (catchUp && table.offlineSince[row] == GeneratorTable.NONE) {
+                // Was running when the world was saved; away from now on
+                table.offlineSince[row] = world.getGameTime();
+                persist(row);
+            }
+        }
     }
 
     public void registerGenerator(Block block) {
         if (block.getType() != Material.BARREL) {
             return;
         }
-        Location loc = block.getLocation();
-        generators.add(loc);
-        progress.put(loc, 0.0);
-        fuelUsesRemaining.put(loc, 0);
+        World world = block.getWorld();
+        int row = table.add(world, block.getX(), block.getY(), block.getZ());
+        if (row < 0) {
+            return;
+        }
+        index.add(row, true); // a player just clicked it, so its chunk is loaded
+        persist(row);
+        table.since[row] = now;
+        schedule(row, now + 1);
         plugin.getLogger().info("[ChunkFall] Registered cobble generator at " +
-                loc.getWorld().getName() + " " + loc.getBlockX() + "," + loc.getBlockY() + "," + loc.getBlockZ());
+                world.getName() + " " + block.getX() + "," + block.getY() + "," + block.getZ());
     }
 
-    public void unregisterGenerator(Block block) {
-        Location loc = block.getLocation();
-        generators.remove(loc);
-        progress.remove(loc);
-        fuelUsesRemaining.remove(loc);
+    /**
+     * @return false if the block was not a generator
+     */
+    public boolean unregisterGenerator(Block block) {
+        int row = table.find(block.getWorld(), block.getX(), block.getY(), block.getZ());
+        if (row < 0) {
+            return false;
+        }
+        forget(row);
         plugin.getLogger().info("[ChunkFall] Unregistered cobble generator at " +
-                loc.getWorld().getName() + " " + loc.getBlockX() + "," + loc.getBlockY() + "," + loc.getBlockZ());
+                block.getWorld().getName() + " " + block.getX() + "," + block.getY() + "," + block.getZ());
+        return true;
+    }
+
+    private void forget(int row) {
+        World world = table.world(row);
+        int x = table.x(row);
+        int y = table.y(row);
+        int z = table.z(row);
+
+        sleep(row);
+        store.remove(world.getUID(), x, y, z);
+        index.remove(row);
+        table.remove(row);
+
+        if (index.inChunk(world, x >> 4, z >> 4).size() == 0) {
+            stoneIndex.dropChunk(world, x >> 4, z >> 4);
+        }
+    }
+
+    /**
+     * True if this block is a registered generator (one table probe).
+     */
+    public boolean isGenerator(Block block) {
+        return table.find(block.getWorld(), block.getX(), block.getY(), block.getZ()) >= 0;
+    }
+
+    public void handleChunkLoad(Chunk chunk) {
+        index.chunkLoaded(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        GeneratorIndex.Bucket rows = index.inChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        for (int i = 0; i < rows.size(); i++) {
+            resume(rows.get(i));
+        }
+    }
+
+    public void handleChunkUnload(Chunk chunk) {
+        // No ticking while unloaded: settle up to now, then stop the clock. With catch-up,
+        // remember when, and the rate, so the time away is credited on the next load
+        GeneratorIndex.Bucket rows = index.inChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        long gameTime = catchUp ? chunk.getWorld().getGameTime() : GeneratorTable.NONE;
+        for (int i = 0; i < rows.size(); i++) {
+            int row = rows.get(i);
+            settle(row);
+            sleep(row);
+            if (catchUp) {
+                table.offlineSince[row] = gameTime;
+                persist(row);
+            }
+        }
+        index.chunkUnloaded(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        stoneIndex.dropChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    /**
+     * A generator's inventory changed (pickaxe swapped, fuel added...): settle its progress at
+     * the old rate and wake it next tick to pick up the new one.
+     */
+    public void handleInventoryChange(Inventory inv) {
+        Location at = inv.getLocation();
+        if (at == null || at.getWorld() == null) {
+            return;
+        }
+        int row = table.find(at);
+        if (row < 0 || !index.isActive(row)) {
+            return;
+        }
+        settle(row);
+        schedule(row, now + 1);
+    }
+
+    /**
+     * A block is about to change through an event; keeps the stone index current.
+     */
+    public void handleBlockChange(Block block) {
+        stoneIndex.markChanged(block);
+    }
+
+    /**
+     * Drop an unloading world's generators from memory; the store keeps them, so they
+     * come back through {@link #attachWorld} when the world loads again.
+     */
+    public void handleWorldUnload(World world) {
+        stoneIndex.dropWorld(world);
+        int[] removed = index.removeWorld(world);
+        if (removed.length > 0) {
+            List<GeneratorStore.Entry> entries = new ArrayList<>(removed.length);
+            for (int row : removed) {
+                settle(row);
+                sleep(row);
+                // World time stands still while the world is unloaded, so this is exact
+                if (catchUp && table.chunkLoaded[row]) {
+                    table.offlineSince[row] = world.getGameTime();
+                }
+                entries.add(GeneratorStore.Entry.of(world.getUID(), table.x(row), table.y(row), table.z(row),
+                        table.progress[row], table.fuel[row], table.rate[row], table.offlineSince[row]));
+                if (table.isDirty(row)) {
+                    saveRow(row);
+                }
+                table.remove(row);
+            }
+            unloaded.put(world.getUID(), entries);
+        }
+        table.releaseWorld(world);
+    }
+
+    public int getGeneratorCount() {
+        return index.size();
+    }
+
+    /**
+     * Generators in loaded chunks, i.e. the ones that produce.
+     */
+    public int getActiveGeneratorCount() {
+        return index.activeSize();
     }
 
     private void tickGenerators() {
@@ -78,117 +324,326 @@ public class CobbleGeneratorManager {
             return;
         }
 
-        if (generators.isEmpty()) {
+        // Queue the generators due this tick
+        now = wheel.getTick() + 1;
+        if (now % saveTicks == 0) {
+            saveChanges();
+        }
+        wheel.advance(onDue);
+        if (backlogSize == 0) {
             return;
         }
 
-        Iterator<Location> it = generators.iterator();
-        while (it.hasNext()) {
-            Location loc = it.next();
-            World world = loc.getWorld();
-            if (world == null) {
-                it.remove();
-                progress.remove(loc);
-                fuelUsesRemaining.remove(loc);
+        // Run queued generators until the budget is spent (at least one, so the queue always
+        // moves); the rest carry over, and progress is settled by elapsed ticks, so a late
+        // generator loses nothing
+        long deadline = System.nanoTime() + budgetNanos;
+        do {
+            int row = backlog[backlogHead];
+            backlogHead = (backlogHead + 1) & (backlog.length - 1);
+            backlogSize--;
+            // Removed (or replaced by another generator), or its chunk unloaded while it waited
+            if (!table.queued[row]) {
                 continue;
             }
-
-            int bx = loc.getBlockX();
-            int by = loc.getBlockY();
-            int bz = loc.getBlockZ();
-
-            if (!world.isChunkLoaded(bx >> 4, bz >> 4)) {
+            table.queued[row] = false;
+            queuedCount--;
+            if (!index.isActive(row)) {
                 continue;
             }
+            // Barrels that disappeared without an event (e.g. WorldEdit)
+            if (!tickGenerator(row)) {
+                forget(row);
+            }
+        } while (backlogSize > 0 && System.nanoTime() < deadline);
+    }
 
-            Block block = world.getBlockAt(bx, by, bz);
-            if (block.getType() != Material.BARREL) {
-                it.remove();
-                progress.remove(loc);
-                fuelUsesRemaining.remove(loc);
-                continue;
+    private void onDue(int row) {
+        if (table.dueAt[row] != now) {
+            return;
+        }
+        table.dueAt[row] = GeneratorTable.NONE;
+        if (table.queued[row]) {
+            return;
+        }
+        table.queued[row] = true;
+        queuedCount++;
+        if (backlogSize == backlog.length) {
+            // Grow the ring, unrolling it to start at 0
+            int[] grown = new int[backlog.length * 2];
+            for (int i = 0; i < backlogSize; i++) {
+                grown[i] = backlog[(backlogHead + i) & (backlog.length - 1)];
             }
+            backlog = grown;
+            backlogHead = 0;
+        }
+        backlog[(backlogHead + backlogSize) & (backlog.length - 1)] = row;
+        backlogSize++;
+    }
 
-            BlockState state = block.getState();
-            if (!(state instanceof Container container)) {
-                it.remove();
-                progress.remove(loc);
-                fuelUsesRemaining.remove(loc);
-                continue;
+    // Start the clock of a generator whose chunk is loaded; first wakes spread over a period
+    private void wake(int row) {
+        table.since[row] = now;
+        int hash = table.x(row) * 73856093 ^ table.y(row) * 19349663 ^ table.z(row) * 83492791;
+        schedule(row, now + 1 + Math.floorMod(hash, Math.max(1, period)));
+    }
+
+    // A generator's chunk is loaded again: turn the time it was away into credit, then wake it
+    private void resume(int row) {
+        long since = table.offlineSince[row];
+        if (since != GeneratorTable.NONE) {
+            table.offlineSince[row] = GeneratorTable.NONE;
+            long away = Math.min(table.world(row).getGameTime() - since, maxOfflineTicks);
+            if (catchUp && away > 0) {
+                table.credit[row] += table.rate[row] * away;
             }
+            persist(row);
+        }
+        wake(row);
+    }
 
-            Inventory inv = container.getInventory();
+    // Unschedule a generator and stop its clock (the rate is kept for catch-up)
+    private void sleep(int row) {
+        table.inventory[row] = null;
+        table.stones[row] = null;
+        table.dueAt[row] = GeneratorTable.NONE;
+        if (table.queued[row]) {
+            table.queued[row] = false;
+            queuedCount--;
+        }
+        table.since[row] = GeneratorTable.NONE;
+    }
 
-            // Any pickaxe type in slot 0
-            ItemStack pick = inv.getItem(0);
-            if (!isPickaxe(pick)) {
-                continue;
+    // Journaled with the next save, however often it changes until then
+    private void persist(int row) {
+        table.markDirty(row);
+    }
+
+    private void saveRow(int row) {
+        store.put(table.world(row).getUID(), table.x(row), table.y(row), table.z(row),
+                table.progress[row], table.fuel[row], table.rate[row], table.offlineSince[row]);
+        table.clearDirty(row);
+    }
+
+    // Stage the rows changed since the last save (or, when the journal is due for compaction,
+    // every generator) and hand them to the store's writer
+    private void saveChanges() {
+        int stored = table.size();
+        for (List<GeneratorStore.Entry> entries : unloaded.values()) {
+            stored += entries.size();
+        }
+
+        if (store.isCompactionDue()) {
+            store.beginSnapshot();
+            for (int row = 0; row < table.rowLimit(); row++) {
+                if (table.world[row] >= 0) {
+                    saveRow(row);
+                }
+            }
+            for (List<GeneratorStore.Entry> entries : unloaded.values()) {
+                for (GeneratorStore.Entry entry : entries) {
+                    GeneratorStore.Key key = entry.getKey();
+                    store.put(key.getWorld(), key.getX(), key.getY(), key.getZ(), entry.getProgress(),
+                            entry.getFuelUses(), entry.getRate(), entry.getOfflineSince());
+                }
             }
+        } else {
+            for (int row = table.nextDirty(0); row >= 0; row = table.nextDirty(row + 1)) {
+                saveRow(row);
+            }
+        }
+        store.handOff(stored);
+    }
 
-            double speedMultiplier = getSpeedMultiplier(pick);
-            if (speedMultiplier <= 0) {
-                continue;
+    private void schedule(int row, long due) {
+        table.dueAt[row] = due;
+        wheel.schedule(row, due);
+    }
+
+    // Bring progress up to now at the rate the generator was running at
+    private double settle(int row) {
+        double prog = table.progress[row];
+        long from = table.since[row];
+        table.since[row] = now;
+        if (from != GeneratorTable.NONE && now > from) {
+            prog += table.rate[row] * (now - from);
+            double whole = Math.rint(prog);
+            if (Math.abs(prog - whole) < EPSILON) {
+                prog = whole;
             }
+            table.progress[row] = prog;
+        }
+        return prog;
+    }
 
-            double prog = progress.getOrDefault(loc, 0.0);
-            prog += speedMultiplier;
+    /**
+     * Generators that were due but did not fit in the tick budget yet.
+     */
+    public int getCarriedOver() {
+        return queuedCount;
+    }
 
-            boolean inventoryFull = false;
-            boolean generatedThisTick = false;
+    /**
+     * Scheduled generator wake-ups, including stale ones not yet passed over.
+     */
+    public int getScheduledWakeups() {
+        return wheel.size();
+    }
 
-            while (prog >= 1.0) {
-                MineResult result = mineNearestStoneInChunk(world, inv, 0, bx, by, bz, loc);
+    /**
+     * Wake one generator whose chunk is loaded: settle its progress, mine what is due and
+     * schedule the tick its next cobble is due.
+     *
+     * @return false if the barrel is gone and the generator should be dropped
+     */
+    private boolean tickGenerator(int row) {
+        World world = table.world(row);
+        int bx = table.x(row);
+        int by = table.y(row);
+        int bz = table.z(row);
 
-                if (!result.mined) {
-                    // Could not mine (no stone, no fuel, or inventory full)
-                    inventoryFull = result.inventoryFull;
-                    break;
-                }
+        Block block = world.getBlockAt(bx, by, bz);
+        if (block.getType() != Material.BARREL) {
+            return false;
+        }
 
-                generatedThisTick = true;
-                prog -= 1.0;
+        Inventory inv = table.inventory[row];
+        if (inv == null) {
+            BlockState state = block.getState();
+            if (!(state instanceof Container container)) {
+                return false;
+            }
+            inv = container.getInventory();
+            table.inventory[row] = inv;
+        }
 
-                if (result.pickBroke) {
-                    // Pick broke; stop for this tick
-                    break;
-                }
+        // Catch-up credit is mined a stack per wake, which needs the chunk's stone index; keep
+        // the credit until it is built
+        double credit = Math.min(table.credit[row], CATCH_UP_PER_WAKE);
+        if (credit > 0) {
+            table.stones[row] = stoneIndex.get(table.stones[row], world, bx >> 4, bz >> 4);
+            if (table.stones[row] == null) {
+                schedule(row, now + 1);
+                return true;
             }
+            table.credit[row] -= credit;
+        }
 
-            // Visual + audio feedback when we actually mined at least one stone
-            if (generatedThisTick) {
-                double px = bx + 0.5;
-                double py = by + 1.2;
-                double pz = bz + 0.5;
-
-                if (config.isCobbleParticlesEnabled()) {
-                    world.spawnParticle(
-                            Particle.CAMPFIRE_COSY_SMOKE,
-                            px, py, pz,
-                            3,
-                            0.1, 0.2, 0.1,
-                            0.0
-                    );
-                }
+        double progBefore = table.progress[row];
+        int fuelBefore = table.fuel[row];
+        double rateBefore = table.rate[row];
+
+        double prog = settle(row);
+
+        // Any pickaxe type in slot 0; without one, look again next period
+        ItemStack pick = inv.getItem(0);
+        double speedMultiplier = isPickaxe(pick) ? getSpeedMultiplier(pick) : 0.0;
+        if (speedMultiplier <= 0) {
+            table.rate[row] = 0.0;
+            table.credit[row] = 0.0;
+            schedule(row, now + period);
+            if (rateBefore != 0.0 || credit > 0) {
+                persist(row);
+            }
+            return true;
+        }
+        table.rate[row] = speedMultiplier / period;
+        prog += credit;
 
-                if (config.isCobbleSoundOnMine()) {
-                    world.playSound(
-                            new Location(world, px, py, pz),
-                            Sound.BLOCK_STONE_BREAK,
-                            0.5f,
-                            1.0f
-                    );
-                }
+        boolean inventoryFull = false;
+        boolean generatedThisTick = false;
+        boolean stalled = false;
+
+        // Everything due this wake goes through one inventory transaction
+        CobbleBatch batch = prog >= 1.0 ? new CobbleBatch(inv, fuelBefore, fuelUses) : null;
+        while (prog >= 1.0) {
+            MineResult result = mineNearestStoneInChunk(world, batch, bx, by, bz, row);
+
+            if (!result.mined) {
+                // Could not mine (no stone, no fuel, or inventory full)
+                inventoryFull = result.inventoryFull;
+                stalled = true;
+                break;
             }
 
-            if (inventoryFull) {
-                // Keep current progress; next time it will try again
-                progress.put(loc, prog);
-            } else {
-                if (prog < 0) prog = 0;
-                if (prog > 10) prog = 10; // arbitrary cap
-                progress.put(loc, prog);
+            generatedThisTick = true;
+            prog -= 1.0;
+
+            if (result.pickBroke) {
+                // Pick broke; stop for this tick
+                table.rate[row] = 0.0;
+                stalled = true;
+                break;
             }
         }
+        if (batch != null) {
+            batch.commit();
+            table.fuel[row] = batch.getFuelBuffered();
+
+            if (batch.isPickBroken() && config.isCobbleSoundOnBreak()) {
+                world.playSound(
+                        new Location(world, bx + 0.5, by + 0.5, bz + 0.5),
+                        Sound.ENTITY_ITEM_BREAK,
+                        0.8f,
+                        0.9f
+                );
+            }
+        }
+        if (stalled) {
+            // The barrel may have been swapped under us (e.g. WorldEdit); fetch it afresh
+            table.inventory[row] = null;
+            table.credit[row] = 0.0;
+        }
+
+        // Visual + audio feedback when we actually mined at least one stone
+        if (generatedThisTick) {
+            double px = bx + 0.5;
+            double py = by + 1.2;
+            double pz = bz + 0.5;
+
+            if (config.isCobbleParticlesEnabled()) {
+                world.spawnParticle(
+                        Particle.CAMPFIRE_COSY_SMOKE,
+                        px, py, pz,
+                        3,
+                        0.1, 0.2, 0.1,
+                        0.0
+                );
+            }
+
+            if (config.isCobbleSoundOnMine()) {
+                world.playSound(
+                        new Location(world, px, py, pz),
+                        Sound.BLOCK_STONE_BREAK,
+                        0.5f,
+                        1.0f
+                );
+            }
+        }
+
+        // A full barrel keeps its progress; next time it will try again. Catch-up credit
+        // is not kept though: once fuel, pick, stone or space runs out, the rest is lost
+        if (!inventoryFull || credit > 0) {
+            if (prog < 0) prog = 0;
+            if (prog > 10) prog = 10; // arbitrary cap
+        }
+        table.progress[row] = prog;
+
+        if (stalled) {
+            // Retry every period until the blocker clears
+            schedule(row, now + period);
+        } else if (table.credit[row] > 0) {
+            // Next stack of catch-up credit
+            schedule(row, now + 1);
+        } else {
+            double ticks = Math.ceil((1.0 - prog) / table.rate[row] - EPSILON);
+            schedule(row, now + Math.max(1L, (long) ticks));
+        }
+
+        if (prog != progBefore || table.fuel[row] != fuelBefore || table.rate[row] != rateBefore || credit > 0) {
+            persist(row);
+        }
+        return true;
     }
 
     private boolean isPickaxe(ItemStack item) {
@@ -235,117 +690,6 @@ public class CobbleGeneratorManager {
         return base * effMultiplier;
     }
 
-    /**
-     * Damage the pickaxe in a given slot by 1, obeying Unbreaking.
-     * Plays a sound when the pick breaks (if enabled).
-     *
-     * @return false if the pick broke or disappeared, true otherwise.
-     */
-    private boolean damagePickaxe(Inventory inv, int slot, World world, int bx, int by, int bz) {
-        ItemStack pick = inv.getItem(slot);
-        if (!isPickaxe(pick)) {
-            return false;
-        }
-
-        ItemMeta meta = pick.getItemMeta();
-        if (!(meta instanceof Damageable damageable)) {
-            return true;
-        }
-
-        // Unbreaking reduces the chance to actually take durability damage
-        int unbreakingLevel = pick.getEnchantmentLevel(Enchantment.UNBREAKING);
-        if (unbreakingLevel > 0) {
-            double chanceToDamage = 1.0 / (unbreakingLevel + 1);
-            if (ThreadLocalRandom.current().nextDouble() >= chanceToDamage) {
-                // This “use” did not consume durability
-                return true;
-            }
-        }
-
-        int newDamage = damageable.getDamage() + 1;
-        int maxDurability = pick.getType().getMaxDurability();
-
-        if (newDamage >= maxDurability) {
-            // Break the pick
-            inv.setItem(slot, null);
-
-            if (config.isCobbleSoundOnBreak()) {
-                world.playSound(
-                        new Location(world, bx + 0.5, by + 0.5, bz + 0.5),
-                        Sound.ENTITY_ITEM_BREAK,
-                        0.8f,
-                        0.9f
-                );
-            }
-
-            return false;
-        } else {
-            damageable.setDamage(newDamage);
-            pick.setItemMeta(meta);
-            inv.setItem(slot, pick);
-            return true;
-        }
-    }
-
-    /**
-     * Consume one "fuel use" for this generator. If no buffered uses remain, tries to
-     * take a new fuel item from the barrel (any slot except 0).
-     *
-     * Returns true if fuel was successfully consumed (or buffered), false if there is no fuel.
-     */
-    private boolean consumeFuelUse(Location generatorLoc, Inventory inv) {
-        int remaining = fuelUsesRemaining.getOrDefault(generatorLoc, 0);
-        if (remaining > 0) {
-            fuelUsesRemaining.put(generatorLoc, remaining - 1);
-            return true;
-        }
-
-        // Need to pull a new fuel item from the barrel.
-        for (int slot = 0; slot < inv.getSize(); slot++) {
-            if (slot == 0) {
-                // slot 0 is reserved for the pickaxe
-                continue;
-            }
-
-            ItemStack stack = inv.getItem(slot);
-            if (stack == null || stack.getType() == Material.AIR) {
-                continue;
-            }
-
-            Material type = stack.getType();
-            if (!isFuel(type)) {
-                continue;
-            }
-
-            int uses = getFuelUses(type);
-            if (uses <= 0) {
-                continue;
-            }
-
-            // Consume one item of this fuel stack
-            int newAmount = stack.getAmount() - 1;
-            if (newAmount <= 0) {
-                inv.setItem(slot, null);
-            } else {
-                stack.setAmount(newAmount);
-            }
-
-            // We immediately consume one "use" for this mining, buffer the rest
-            fuelUsesRemaining.put(generatorLoc, uses - 1);
-            return true;
-        }
-
-        // No suitable fuel found
-        return false;
-    }
-
-    /**
-     * "Is this a valid furnace fuel" — use Bukkit's built-in knowledge.
-     */
-    private boolean isFuel(Material type) {
-        return type != null && type.isFuel();
-    }
-
     /**
      * How many cobblestone "mines" a single item of this fuel should provide.
      * This does NOT try to be pixel-perfect with vanilla burn times, but roughly
@@ -368,143 +712,78 @@ public class CobbleGeneratorManager {
      * If any of those is missing, this returns mined=false and does nothing.
      */
     private MineResult mineNearestStoneInChunk(World world,
-                                               Inventory inv,
-                                               int pickSlot,
+                                               CobbleBatch batch,
                                                int barrelX,
                                                int barrelY,
                                                int barrelZ,
-                                               Location generatorLoc) {
+                                               int row) {
 
         MineResult result = new MineResult();
 
-        int chunkX = barrelX >> 4;
-        int chunkZ = barrelZ >> 4;
-        int chunkMinX = chunkX << 4;
-        int chunkMinZ = chunkZ << 4;
-        int chunkMaxX = chunkMinX + 15;
-        int chunkMaxZ = chunkMinZ + 15;
+        int chunkMinX = barrelX & ~15;
+        int chunkMinZ = barrelZ & ~15;
 
-        int minY = world.getMinHeight();
-        int maxY = world.getMaxHeight() - 1;
+        StoneIndex.ChunkStones stones = stoneIndex.get(table.stones[row], world, barrelX >> 4, barrelZ >> 4);
+        table.stones[row] = stones;
+        if (stones == null) {
+            // Index still being built
+            return result;
+        }
+
+        // Found nothing last time and no stone appeared since
+        if (table.sleepStamp[row] == stones.getStamp()) {
+            return result;
+        }
 
         int maxYRange = Math.max(1, config.getCobbleVerticalSearchRange());
 
         Block bestBlock = null;
-        int bestDistSq = Integer.MAX_VALUE;
-
-        // Search outward in vertical "rings" around barrelY
-        for (int dy = 0; dy <= maxYRange; dy++) {
-            int[] ys = {barrelY + dy, barrelY - dy};
-
-            for (int yi = 0; yi < 2; yi++) {
-                int y = ys[yi];
-                if (y < minY || y > maxY) {
-                    continue;
-                }
-
-                for (int x = chunkMinX; x <= chunkMaxX; x++) {
-                    for (int z = chunkMinZ; z <= chunkMaxZ; z++) {
-                        Block candidate = world.getBlockAt(x, y, z);
-                        if (candidate.getType() != Material.STONE) {
-                            continue;
-                        }
-
-                        int dx = x - barrelX;
-                        int dz = z - barrelZ;
-                        int dy2 = y - barrelY;
-                        int distSq = dx * dx + dy2 * dy2 + dz * dz;
-
-                        if (distSq < bestDistSq) {
-                            bestDistSq = distSq;
-                            bestBlock = candidate;
-                        }
-                    }
-                }
-            }
-
-            if (bestBlock != null) {
+        int bestPos;
+        while ((bestPos = stones.nearest(barrelX & 15, barrelY, barrelZ & 15, maxYRange)) >= 0) {
+            Block candidate = world.getBlockAt(chunkMinX + (bestPos >> 4 & 15), stones.minY + (bestPos >> 8),
+                    chunkMinZ + (bestPos & 15));
+            if (candidate.getType() == Material.STONE) {
+                bestBlock = candidate;
                 break;
             }
+            // Changed without an event (e.g. WorldEdit)
+            stones.set(bestPos, false);
         }
 
         if (bestBlock == null) {
             // No stone found in chunk (within the vertical range)
+            table.sleepStamp[row] = stones.getStamp();
             return result;
         }
+        table.sleepStamp[row] = GeneratorTable.NONE;
 
         // Check inventory space for 1 cobblestone BEFORE consuming fuel
-        if (!hasSpaceForCobble(inv)) {
+        if (!batch.hasRoom()) {
             result.inventoryFull = true;
             return result;
         }
 
         // Require fuel: consume one "fuel use" (buffered or a new item)
-        if (!consumeFuelUse(generatorLoc, inv)) {
+        if (!batch.takeFuel()) {
             // No fuel: cannot mine
             return result;
         }
 
-        // Actually add 1 cobblestone to the barrel
-        if (!addOneCobble(inv)) {
-            // Shouldn't happen since we checked space, but be defensive:
-            result.inventoryFull = true;
-            return result;
-        }
+        // Add 1 cobblestone to the barrel (written back when the batch commits)
+        batch.addCobble();
 
-        // Mine the stone: turn it into air
+        // Mine the stone: turn it into air (no event, so tell the index)
         bestBlock.setType(Material.AIR, false);
+        stones.set(bestPos, false);
 
         // Damage the pickaxe
-        boolean stillExists = damagePickaxe(inv, pickSlot, world, barrelX, barrelY, barrelZ);
+        boolean stillExists = batch.usePick();
 
         result.mined = true;
         result.pickBroke = !stillExists;
         return result;
     }
 
-    /**
-     * Check if the inventory has room to add one cobblestone (either stacking or empty slot).
-     */
-    private boolean hasSpaceForCobble(Inventory inv) {
-        for (int i = 0; i < inv.getSize(); i++) {
-            ItemStack stack = inv.getItem(i);
-            if (stack == null || stack.getType() == Material.AIR) {
-                return true;
-            }
-            if (stack.getType() == Material.COBBLESTONE && stack.getAmount() < stack.getMaxStackSize()) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Actually add a single cobblestone item to the inventory, assuming there is space.
-     */
-    private boolean addOneCobble(Inventory inv) {
-        // First try to stack onto existing cobble
-        for (int i = 0; i < inv.getSize(); i++) {
-            ItemStack stack = inv.getItem(i);
-            if (stack != null && stack.getType() == Material.COBBLESTONE &&
-                    stack.getAmount() < stack.getMaxStackSize()) {
-                stack.setAmount(stack.getAmount() + 1);
-                inv.setItem(i, stack);
-                return true;
-            }
-        }
-
-        // Otherwise, use an empty slot
-        for (int i = 0; i < inv.getSize(); i++) {
-            ItemStack stack = inv.getItem(i);
-            if (stack == null || stack.getType() == Material.AIR) {
-                inv.setItem(i, new ItemStack(Material.COBBLESTONE, 1));
-                return true;
-            }
-        }
-
-        return false;
-    }
-
     private static class MineResult {
         boolean mined = false;
         boolean pickBroke = false;
@@ -0,0 +1,151 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
+import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+import com.daytonjwatson.chunkfall.util.LongHashSet;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Chunks that were just voided, where block physics and fluid flow are held back for a short
+ * window, together with the blocks of neighbouring chunks that touch them. Without it, water,
+ * lava and sand at an island edge start pouring into the new void and keep the server busy
+ * for many ticks. The rest of a neighbouring chunk (often an island players are on) is left
+ * alone, so redstone, doors, crops and fluids there keep working.
+ *
+ * Guards expire in batches: a chunk marked now is in the current generation, which becomes
+ * the previous one after a window and is dropped after the next, so a guard lasts between
+ * one and two windows. That keeps the per-event check to primitive set lookups.
+ *
+ * Main thread only.
+ */
+public class EdgePhysicsGuard {
+
+    private final Plugin plugin;
+    private final int windowTicks;
+
+    // World -> guarded chunk keys
+    private final Map<UUID, Generations> guarded = new HashMap<>();
+    private int guardedCount;
+
+    private long tick;
+    private long suppressed;
+    private BukkitTask task;
+
+    public EdgePhysicsGuard(Plugin plugin, ChunkFallConfig config) {
+        this.plugin = plugin;
+        this.windowTicks = config.getEdgePhysicsWindowTicks();
+    }
+
+    public void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        }
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        guarded.clear();
+        guardedCount = 0;
+    }
+
+    private void tick() {
+        tick++;
+        if (tick % windowTicks != 0 || guardedCount == 0) {
+            return;
+        }
+        guardedCount = 0;
+        for (Iterator<Generations> worlds = guarded.values().iterator(); worlds.hasNext(); ) {
+            Generations chunks = worlds.next();
+            chunks.rotate();
+            if (chunks.previous.isEmpty()) {
+                worlds.remove();
+            } else {
+                guardedCount += chunks.previous.size();
+            }
+        }
+    }
+
+    /**
+     * Guard a voided chunk for the next window.
+     */
+    public void markVoided(World world, int cx, int cz) {
+        Generations chunks = guarded.computeIfAbsent(world.getUID(), uid -> new Generations());
+        long key = ChunkKeyUtil.chunkKey(cx, cz);
+        if (chunks.current.add(key) && !chunks.previous.contains(key)) {
+            guardedCount++;
+        }
+    }
+
+    /**
+     * True if physics at this block should be held back. Called for every physics event,
+     * so the common case (nothing guarded) returns before any lookup.
+     */
+    public boolean isGuarded(Block block) {
+        if (guardedCount == 0) {
+            return false;
+        }
+        Generations chunks = guarded.get(block.getWorld().getUID());
+        if (chunks == null) {
+            return false;
+        }
+        int cx = block.getX() >> 4;
+        int cz = block.getZ() >> 4;
+        if (chunks.contains(ChunkKeyUtil.chunkKey(cx, cz))) {
+            return true;
+        }
+        // A border block: guarded if the chunk across that border is
+        int lx = block.getX() & 15;
+        int lz = block.getZ() & 15;
+        return lx == 0 && chunks.contains(ChunkKeyUtil.chunkKey(cx - 1, cz))
+                || lx == 15 && chunks.contains(ChunkKeyUtil.chunkKey(cx + 1, cz))
+                || lz == 0 && chunks.contains(ChunkKeyUtil.chunkKey(cx, cz - 1))
+                || lz == 15 && chunks.contains(ChunkKeyUtil.chunkKey(cx, cz + 1));
+    }
+
+    /**
+     * Count one held-back event (for /chunkfall status).
+     */
+    public void recordSuppressed() {
+        suppressed++;
+    }
+
+    public long getSuppressed() {
+        return suppressed;
+    }
+
+    public int getGuardedChunks() {
+        return guardedCount;
+    }
+
+    /**
+     * Guarded chunks of one world: marked in this window, and in the one before.
+     */
+    private static final class Generations {
+        LongHashSet current = new LongHashSet();
+        LongHashSet previous = new LongHashSet();
+
+        boolean contains(long key) {
+            return current.contains(key) || previous.contains(key);
+        }
+
+        // The previous window's guards end; the sets swap so neither is reallocated
+        void rotate() {
+            LongHashSet expired = previous;
+            previous = current;
+            current = expired;
+            current.clear();
+        }
+    }
+}
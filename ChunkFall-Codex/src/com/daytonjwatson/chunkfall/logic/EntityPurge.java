@@ -0,0 +1,87 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Tameable;
+import org.bukkit.generator.LimitedRegion;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Clears what voiding leaves behind in a chunk: generated entities (mobs, item frames,
+ * mineshaft minecarts, armor stands) that would otherwise tick in the void until they
+ * fall out of the world. Block entities need nothing: clearing a block drops its block
+ * entity with it.
+ *
+ * Players, tamed animals, vehicles carrying a player and the configured entity types
+ * are never removed.
+ */
+public class EntityPurge {
+
+    private final Set<EntityType> keep = EnumSet.noneOf(EntityType.class);
+
+    // The populator variant runs on worldgen threads
+    private final AtomicLong entitiesRemoved = new AtomicLong();
+
+    public EntityPurge(Collection<String> keepEntities, Logger logger) {
+        for (String name : keepEntities) {
+            try {
+                keep.add(EntityType.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                logger.warning("[ChunkFall] void-purge: unknown entity type " + name + ", ignoring it.");
+            }
+        }
+    }
+
+    /**
+     * Main thread, right after the chunk was voided.
+     */
+    public void purge(Chunk chunk) {
+        for (Entity entity : chunk.getEntities()) {
+            removeIfPurgeable(entity);
+        }
+    }
+
+    /**
+     * Worldgen-thread variant for BlockPopulator, right after the chunk was voided. Entities
+     * removed here are simply never added to the world.
+     */
+    public void purge(LimitedRegion region, int cx, int cz) {
+        for (Entity entity : region.getEntities()) {
+            // The region holds the buffer chunks too
+            Location location = entity.getLocation();
+            if (location.getBlockX() >> 4 == cx && location.getBlockZ() >> 4 == cz) {
+                removeIfPurgeable(entity);
+            }
+        }
+    }
+
+    private void removeIfPurgeable(Entity entity) {
+        if (entity instanceof Player || keep.contains(entity.getType())) {
+            return;
+        }
+        if (entity instanceof Tameable tameable && tameable.isTamed()) {
+            return;
+        }
+        for (Entity passenger : entity.getPassengers()) {
+            if (passenger instanceof Player) {
+                return;
+            }
+        }
+
+        entity.remove();
+        entitiesRemoved.incrementAndGet();
+    }
+
+    public long getEntitiesRemoved() {
+        return entitiesRemoved.get();
+    }
+}
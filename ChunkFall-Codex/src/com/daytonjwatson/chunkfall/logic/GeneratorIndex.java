@@ -0,0 +1,215 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+import org.bukkit.World;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Registered cobble generators (rows of the {@link GeneratorTable}), bucketed by world and
+ * chunk. A bucket is active while its chunk is loaded, so only generators that can actually
+ * run are ever scheduled, and nothing asks the world whether a chunk is loaded.
+ *
+ * Main thread only.
+ */
+public class GeneratorIndex {
+
+    private static final Bucket EMPTY = new Bucket();
+
+    private final GeneratorTable table;
+
+    // World -> chunk key -> generators in that chunk
+    private final Map<UUID, Map<Long, Bucket>> all = new HashMap<>();
+    // Same buckets (shared), only for loaded chunks
+    private final Map<UUID, Map<Long, Bucket>> active = new HashMap<>();
+
+    private int size;
+    private int activeSize;
+
+    public GeneratorIndex(GeneratorTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @param chunkLoaded whether the generator's chunk is loaded right now
+     */
+    public void add(int row, boolean chunkLoaded) {
+        UUID world = table.world(row).getUID();
+        long key = chunkKeyOf(row);
+
+        Bucket bucket = all.computeIfAbsent(world, uid -> new HashMap<>())
+                .computeIfAbsent(key, k -> new Bucket());
+        bucket.add(row);
+        size++;
+
+        Map<Long, Bucket> worldActive = active.get(world);
+        if (worldActive != null && worldActive.get(key) == bucket) {
+            table.chunkLoaded[row] = true;
+            activeSize++;
+        } else if (chunkLoaded) {
+            active.computeIfAbsent(world, uid -> new HashMap<>()).put(key, bucket);
+            bucket.setLoaded(table, true);
+            activeSize += bucket.size;
+        }
+    }
+
+    public void remove(int row) {
+        UUID world = table.world(row).getUID();
+        long key = chunkKeyOf(row);
+
+        Map<Long, Bucket> worldAll = all.get(world);
+        Bucket bucket = worldAll != null ? worldAll.get(key) : null;
+        if (bucket == null || !bucket.remove(row)) {
+            return;
+        }
+        size--;
+
+        Map<Long, Bucket> worldActive = active.get(world);
+        boolean isActive = worldActive != null && worldActive.get(key) == bucket;
+        if (isActive) {
+            activeSize--;
+        }
+
+        if (bucket.size == 0) {
+            worldAll.remove(key);
+            if (worldAll.isEmpty()) {
+                all.remove(world);
+            }
+            if (isActive) {
+                worldActive.remove(key);
+                if (worldActive.isEmpty()) {
+                    active.remove(world);
+                }
+            }
+        }
+    }
+
+    /**
+     * True if the generator's chunk is loaded.
+     */
+    public boolean isActive(int row) {
+        return table.chunkLoaded[row];
+    }
+
+    /**
+     * Generators in a chunk (empty if none); must not be modified while iterated.
+     */
+    public Bucket inChunk(World world, int cx, int cz) {
+        Map<Long, Bucket> worldAll = all.get(world.getUID());
+        Bucket bucket = worldAll != null ? worldAll.get(ChunkKeyUtil.chunkKey(cx, cz)) : null;
+        return bucket != null ? bucket : EMPTY;
+    }
+
+    public void chunkLoaded(World world, int cx, int cz) {
+        Map<Long, Bucket> worldAll = all.get(world.getUID());
+        if (worldAll == null) {
+            return;
+        }
+        long key = ChunkKeyUtil.chunkKey(cx, cz);
+        Bucket bucket = worldAll.get(key);
+        if (bucket != null && active.computeIfAbsent(world.getUID(), uid -> new HashMap<>()).put(key, bucket) == null) {
+            bucket.setLoaded(table, true);
+            activeSize += bucket.size;
+        }
+    }
+
+    public void chunkUnloaded(World world, int cx, int cz) {
+        Map<Long, Bucket> worldActive = active.get(world.getUID());
+        if (worldActive == null) {
+            return;
+        }
+        Bucket bucket = worldActive.remove(ChunkKeyUtil.chunkKey(cx, cz));
+        if (bucket != null) {
+            bucket.setLoaded(table, false);
+            activeSize -= bucket.size;
+            if (worldActive.isEmpty()) {
+                active.remove(world.getUID());
+            }
+        }
+    }
+
+    /**
+     * Drop a world's generators from the index (world unload).
+     *
+     * @return the rows that were dropped
+     */
+    public int[] removeWorld(World world) {
+        Map<Long, Bucket> worldAll = all.remove(world.getUID());
+        Map<Long, Bucket> worldActive = active.remove(world.getUID());
+        if (worldAll == null) {
+            return new int[0];
+        }
+
+        int count = 0;
+        for (Bucket bucket : worldAll.values()) {
+            count += bucket.size;
+        }
+        int[] removed = new int[count];
+        int i = 0;
+        for (Bucket bucket : worldAll.values()) {
+            System.arraycopy(bucket.rows, 0, removed, i, bucket.size);
+            i += bucket.size;
+        }
+        if (worldActive != null) {
+            for (Bucket bucket : worldActive.values()) {
+                activeSize -= bucket.size;
+            }
+        }
+        size -= count;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int activeSize() {
+        return activeSize;
+    }
+
+    private long chunkKeyOf(int row) {
+        return ChunkKeyUtil.chunkKey(table.x(row) >> 4, table.z(row) >> 4);
+    }
+
+    /**
+     * Rows of the generators in one chunk.
+     */
+    public static final class Bucket {
+        private int[] rows = new int[2];
+        private int size;
+
+        public int size() {
+            return size;
+        }
+
+        public int get(int i) {
+            return rows[i];
+        }
+
+        private void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        private void setLoaded(GeneratorTable table, boolean loaded) {
+            for (int i = 0; i < size; i++) {
+                table.chunkLoaded[rows[i]] = loaded;
+            }
+        }
+
+        private boolean remove(int row) {
+            for (int i = 0; i < size; i++) {
+                if (rows[i] == row) {
+                    rows[i] = rows[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
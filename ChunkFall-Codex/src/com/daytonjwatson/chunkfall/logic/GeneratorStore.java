@@ -0,0 +1,528 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe store for cobble generators: an append-only journal of fixed-size records.
+ *
+ * The main thread encodes changes straight into a reused record buffer ({@link #put},
+ * {@link #remove}) and hands the batch to a single writer thread once per save interval
+ * ({@link #handOff}), which appends it and forces it to disk, so a crash loses at most one
+ * interval. Nothing is boxed and, once the buffers have grown to their working size, nothing
+ * is allocated. Every record carries a CRC; a torn record at the end of the file (crash
+ * mid-write) is cut off on the next load.
+ *
+ * The store keeps no copy of the generators. When the journal holds far more records than
+ * there are generators, the writer asks for a snapshot ({@link #isCompactionDue()}); the main
+ * thread stages one record per generator instead of its changes, and the writer writes it to
+ * a new journal and swaps that in atomically.
+ */
+public class GeneratorStore {
+
+    private static final int MAGIC = 0x43464A32; // "CFJ2"
+    private static final int HEADER_BYTES = 4;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    // op, world uuid, x, y, z, progress, fuel uses, rate, offline since, crc
+    private static final int RECORD_BYTES = 1 + 16 + 12 + 8 + 4 + 8 + 8 + 4;
+    private static final int CRC_OFFSET = RECORD_BYTES - 4;
+
+    /** "Not set" for {@link Entry#getOfflineSince()}. */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final int MIN_COMPACT_RECORDS = 4096;
+
+    private final Path file;
+    private final Logger logger;
+
+    // Main thread: records staged since the last hand-off
+    private ByteBuffer staging = ByteBuffer.allocate(RECORD_BYTES * 256);
+    private boolean stagingSnapshot;
+    private final CRC32 crc = new CRC32();
+    private boolean open;
+
+    // Main thread -> writer thread
+    private final Object pendingLock = new Object();
+    private ByteBuffer inbox = ByteBuffer.allocate(RECORD_BYTES * 256);
+    private boolean inboxSnapshot;
+    private int liveCount;
+    private volatile boolean compactionDue;
+
+    // Writer thread only (and load/close, when the writer is not running)
+    private ByteBuffer outbox = ByteBuffer.allocate(RECORD_BYTES * 256);
+    private FileChannel channel;
+    private long recordsInFile;
+    private final Runnable flushTask = this::flushSafely;
+
+    private ExecutorService writer;
+
+    public GeneratorStore(File file, Logger logger) {
+        this.file = file.toPath();
+        this.logger = logger;
+    }
+
+    /**
+     * Read the journal and open it for appending. Call once, before {@link #start()}; if this
+     * fails, the store is closed and nothing more is written to the journal.
+     *
+     * @return every stored generator, including those in worlds that are not loaded
+     */
+    public Collection<Entry> load() throws IOException {
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            Collection<Entry> entries = readJournal();
+            liveCount = entries.size();
+            open = true;
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            // Not ours, or unreadable: never append to it
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            channel = null;
+            recordsInFile = 0;
+            throw e;
+        }
+    }
+
+    private Collection<Entry> readJournal() throws IOException {
+        Map<Key, Entry> live = new HashMap<>();
+        long size = channel.size();
+        if (size < HEADER_BYTES) {
+            channel.truncate(0);
+            writeHeader(channel);
+        } else {
+            // One bulk read: tens of thousands of records are a few MiB at most. Not mapped,
+            // so the file can be truncated right after on every platform
+            ByteBuffer data = ByteBuffer.allocate((int) size);
+            while (data.hasRemaining()) {
+                if (channel.read(data, data.position()) < 0) {
+                    break;
+                }
+            }
+            data.flip();
+            long good = replay(data, live);
+            if (good < size) {
+                logger.warning("[ChunkFall] Generator journal had " + (size - good)
+                        + " bytes of incomplete data at the end (crash?), discarding them.");
+                channel.truncate(good);
+            }
+        }
+        channel.position(channel.size());
+        return new ArrayList<>(live.values());
+    }
+
+    // Apply every intact record; returns the offset just past the last one
+    private long replay(ByteBuffer map, Map<Key, Entry> live) throws IOException {
+        if (map.getInt(0) != MAGIC) {
+            throw new IOException("Not a ChunkFall generator journal: " + file);
+        }
+
+        byte[] record = new byte[RECORD_BYTES];
+        int offset = HEADER_BYTES;
+        while (offset + RECORD_BYTES <= map.limit()) {
+            map.get(offset, record);
+            ByteBuffer in = ByteBuffer.wrap(record);
+
+            crc.reset();
+            crc.update(record, 0, CRC_OFFSET);
+            if ((int) crc.getValue() != in.getInt(CRC_OFFSET)) {
+                break;
+            }
+
+            byte op = in.get();
+            Key key = new Key(new UUID(in.getLong(), in.getLong()), in.getInt(), in.getInt(), in.getInt());
+            if (op == OP_PUT) {
+                double progress = in.getDouble();
+                int fuelUses = in.getInt();
+                double rate = in.getDouble();
+                long offlineSince = in.getLong();
+                live.put(key, new Entry(key, progress, fuelUses, rate, offlineSince));
+            } else if (op == OP_REMOVE) {
+                live.remove(key);
+            } else {
+                break;
+            }
+            recordsInFile++;
+            offset += RECORD_BYTES;
+        }
+        return offset;
+    }
+
+    /**
+     * Start the write-behind thread.
+     */
+    public void start() {
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ChunkFall-GeneratorStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stage the current state of a generator (main thread; no I/O).
+     *
+     * @param rate         progress per tick it was running at
+     * @param offlineSince world game time its chunk unloaded at, or {@link #NONE}
+     */
+    public void put(UUID world, int x, int y, int z, double progress, int fuelUses, double rate,
+                    long offlineSince) {
+        if (open) {
+            staging = ensureRoom(staging, RECORD_BYTES);
+            encode(staging, OP_PUT, world, x, y, z, progress, fuelUses, rate, offlineSince);
+        }
+    }
+
+    /**
+     * Stage forgetting a generator (main thread; no I/O).
+     */
+    public void remove(UUID world, int x, int y, int z) {
+        if (open) {
+            staging = ensureRoom(staging, RECORD_BYTES);
+            encode(staging, OP_REMOVE, world, x, y, z, 0.0, 0, 0.0, NONE);
+        }
+    }
+
+    /**
+     * True once the journal has grown well past the generators it holds; the next hand-off
+     * should then be a snapshot.
+     */
+    public boolean isCompactionDue() {
+        return compactionDue;
+    }
+
+    /**
+     * Drop what was staged since the last hand-off: the caller now stages one record per
+     * generator (loaded or not), and the writer replaces the journal with them.
+     */
+    public void beginSnapshot() {
+        if (open) {
+            staging.clear();
+            stagingSnapshot = true;
+        }
+    }
+
+    /**
+     * Pass the staged records to the writer and have it write them (main thread, once per
+     * save interval).
+     *
+     * @param generators how many generators there are now, loaded or not
+     */
+    public void handOff(int generators) {
+        if (!open || (staging.position() == 0 && !stagingSnapshot)) {
+            return;
+        }
+        staging.flip();
+        synchronized (pendingLock) {
+            if (stagingSnapshot) {
+                // Anything not yet written is older than the snapshot
+                inbox.clear();
+                inboxSnapshot = true;
+                compactionDue = false;
+            }
+            inbox = ensureRoom(inbox, staging.remaining());
+            inbox.put(staging);
+            liveCount = generators;
+        }
+        staging.clear();
+        stagingSnapshot = false;
+        if (writer != null) {
+            writer.execute(flushTask);
+        }
+    }
+
+    /**
+     * Stop the writer and write whatever was handed off (plugin disable).
+     */
+    public void close() {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+        flushSafely();
+        open = false;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "[ChunkFall] Could not close the generator journal.", e);
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "[ChunkFall] Could not save cobble generators, will retry.", e);
+        }
+    }
+
+    private synchronized void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+
+        boolean snapshot;
+        int generators;
+        synchronized (pendingLock) {
+            if (inbox.position() == 0 && !inboxSnapshot) {
+                return;
+            }
+            ByteBuffer batch = inbox;
+            inbox = outbox;
+            outbox = batch;
+            snapshot = inboxSnapshot;
+            inboxSnapshot = false;
+            generators = liveCount;
+        }
+
+        outbox.flip();
+        try {
+            if (snapshot) {
+                compact(outbox);
+            } else {
+                append(outbox);
+            }
+        } catch (IOException e) {
+            // Put the batch back in front of newer changes, unless a snapshot replaced it
+            outbox.position(0);
+            synchronized (pendingLock) {
+                if (!inboxSnapshot) {
+                    inbox.flip();
+                    ByteBuffer merged = ByteBuffer.allocate(outbox.remaining() + inbox.remaining() + RECORD_BYTES * 256);
+                    merged.put(outbox).put(inbox);
+                    inbox = merged;
+                    inboxSnapshot = snapshot;
+                }
+            }
+            outbox.clear();
+            throw e;
+        }
+        outbox.clear();
+
+        if (recordsInFile > MIN_COMPACT_RECORDS && recordsInFile > 2L * generators) {
+            compactionDue = true;
+        }
+    }
+
+    private void append(ByteBuffer records) throws IOException {
+        long start = channel.position();
+        try {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // A half-written batch would hide every later record from replay
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException ignored) {
+                // The CRC check still stops replay at the damaged record
+            }
+            throw e;
+        }
+        recordsInFile += records.limit() / RECORD_BYTES;
+    }
+
+    // Write a new journal holding just these records, then swap it in. On failure the old
+    // journal stays in use, open and with its record count
+    private void compact(ByteBuffer records) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long before = recordsInFile;
+
+        boolean swapped = false;
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeHeader(out);
+                while (records.hasRemaining()) {
+                    out.write(records);
+                }
+                out.force(true);
+            }
+
+            channel.close();
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            swapped = true;
+            recordsInFile = records.limit() / RECORD_BYTES;
+        } finally {
+            // Whichever journal is in place now: the compacted one, or the old one if the
+            // swap failed
+            if (!channel.isOpen()) {
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+            }
+        }
+
+        if (swapped) {
+            logger.info("[ChunkFall] Compacted generator journal: " + before + " -> " + recordsInFile + " records.");
+        }
+    }
+
+    private static void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(0, MAGIC);
+        out.position(0);
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+    }
+
+    private void encode(ByteBuffer out, byte op, UUID world, int x, int y, int z, double progress, int fuelUses,
+                        double rate, long offlineSince) {
+        int start = out.position();
+        out.put(op)
+                .putLong(world.getMostSignificantBits())
+                .putLong(world.getLeastSignificantBits())
+                .putInt(x).putInt(y).putInt(z)
+                .putDouble(progress)
+                .putInt(fuelUses)
+                .putDouble(rate)
+                .putLong(offlineSince);
+
+        crc.reset();
+        crc.update(out.array(), start, CRC_OFFSET);
+        out.putInt((int) crc.getValue());
+    }
+
+    // A buffer with room for {@code bytes} more, keeping what is written so far
+    private static ByteBuffer ensureRoom(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    /**
+     * Block position of a generator in a world (loaded or not).
+     */
+    public static final class Key {
+        final UUID world;
+        final int x;
+        final int y;
+        final int z;
+
+        Key(UUID world, int x, int y, int z) {
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        public UUID getWorld() {
+            return world;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getZ() {
+            return z;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return x == other.x && y == other.y && z == other.z && world.equals(other.world);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(world, x, y, z);
+        }
+    }
+
+    /**
+     * Stored state of one generator.
+     */
+    public static final class Entry {
+        final Key key;
+        final double progress;
+        final int fuelUses;
+        final double rate;
+        final long offlineSince;
+
+        public static Entry of(UUID world, int x, int y, int z, double progress, int fuelUses, double rate,
+                               long offlineSince) {
+            return new Entry(new Key(world, x, y, z), progress, fuelUses, rate, offlineSince);
+        }
+
+        Entry(Key key, double progress, int fuelUses, double rate, long offlineSince) {
+            this.key = key;
+            this.progress = progress;
+            this.fuelUses = fuelUses;
+            this.rate = rate;
+            this.offlineSince = offlineSince;
+        }
+
+        public Key getKey() {
+            return key;
+        }
+
+        public double getProgress() {
+            return progress;
+        }
+
+        public int getFuelUses() {
+            return fuelUses;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        /**
+         * World game time the generator's chunk unloaded at, or {@link #NONE}.
+         */
+        public long getOfflineSince() {
+            return offlineSince;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.inventory.Inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * State of every cobble generator in memory, one row per generator in parallel primitive
+ * arrays. A generator is found by world and packed block key through an open-addressing
+ * table, so lookups neither hash a Location nor box anything, and ticking allocates nothing.
+ *
+ * Rows are reused after removal; a row number is only valid while its generator exists.
+ * The arrays are package-private for the manager to read and write directly, and may be
+ * replaced when the table grows. Main thread only.
+ */
+public class GeneratorTable {
+
+    /** "Not set" for the long columns. */
+    static final long NONE = Long.MIN_VALUE;
+
+    private static final int INITIAL_ROWS = 64;
+
+    // Worlds by id; the id is what rows store
+    private final List<World> worlds = new ArrayList<>();
+    private final Map<UUID, Integer> worldIds = new HashMap<>();
+
+    // Columns, one entry per row
+    int[] world;            // world id, -1 if the row is free
+    long[] blockKey;        // packed x/y/z, see pack()
+    double[] progress;      // how close the next cobble is
+    int[] fuel;             // remaining uses of the fuel item being burnt
+    double[] rate;          // progress per tick as of the last wake
+    long[] since;           // tick progress was last settled, NONE while not running
+    long[] dueAt;           // tick the generator is scheduled for, NONE if not scheduled
+    long[] sleepStamp;      // chunk stone stamp when it last found no stone, NONE if awake
+    long[] offlineSince;    // world game time its chunk unloaded at (catch-up), NONE if not
+    double[] credit;        // catch-up progress not yet applied
+    boolean[] queued;       // waiting in the tick backlog
+    boolean[] chunkLoaded;  // kept by GeneratorIndex
+    Inventory[] inventory;  // cached live barrel inventory
+    StoneIndex.ChunkStones[] stones; // cached stone index of the generator's chunk
+
+    // Rows changed since they were last journaled, one bit per row
+    private long[] dirty;
+
+    private int rows;       // high-water mark
+    private int size;
+    private int[] free = new int[16];
+    private int freeCount;
+
+    // Open addressing, linear probing: row + 1, 0 = empty
+    private int[] slots;
+    private int mask;
+
+    public GeneratorTable() {
+        allocate(INITIAL_ROWS);
+        slots = new int[INITIAL_ROWS * 2];
+        mask = slots.length - 1;
+    }
+
+    /**
+     * @return the generator's row, or -1
+     */
+    public int find(World w, int x, int y, int z) {
+        Integer id = worldIds.get(w.getUID());
+        return id == null ? -1 : find(id, pack(x, y, z));
+    }
+
+    public int find(Location loc) {
+        return find(loc.getWorld(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+    }
+
+    private int find(int worldId, long key) {
+        for (int slot = hash(worldId, key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int row = entry - 1;
+            if (blockKey[row] == key && world[row] == worldId) {
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Add a generator with empty state.
+     *
+     * @return its row, or -1 if it already exists
+     */
+    public int add(World w, int x, int y, int z) {
+        int worldId = worldIds.computeIfAbsent(w.getUID(), uid -> {
+            worlds.add(w);
+            return worlds.size() - 1;
+        });
+        long key = pack(x, y, z);
+        if (find(worldId, key) >= 0) {
+            return -1;
+        }
+
+        if ((size + 1) * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+
+        int row;
+        if (freeCount > 0) {
+            row = free[--freeCount];
+        } else {
+            if (rows == world.length) {
+                allocate(world.length * 2);
+            }
+            row = rows++;
+        }
+
+        world[row] = worldId;
+        blockKey[row] = key;
+        progress[row] = 0.0;
+        fuel[row] = 0;
+        rate[row] = 0.0;
+        since[row] = NONE;
+        dueAt[row] = NONE;
+        sleepStamp[row] = NONE;
+        offlineSince[row] = NONE;
+        credit[row] = 0.0;
+        queued[row] = false;
+        chunkLoaded[row] = false;
+        inventory[row] = null;
+        stones[row] = null;
+        clearDirty(row);
+
+        insert(row);
+        size++;
+        return row;
+    }
+
+    public void remove(int row) {
+        int slot = hash(world[row], blockKey[row]) & mask;
+        while (slots[slot] != row + 1) {
+            slot = (slot + 1) & mask;
+        }
+
+        // Backward-shift delete: pull later entries of the probe run into the hole
+        int hole = slot;
+        for (int next = (hole + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int other = slots[next] - 1;
+            int home = hash(world[other], blockKey[other]) & mask;
+            // Move it back unless its home lies cyclically in (hole, next]
+            boolean stays = hole <= next ? (home > hole && home <= next) : (home > hole || home <= next);
+            if (!stays) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+        }
+        slots[hole] = 0;
+
+        world[row] = -1;
+        inventory[row] = null;
+        stones[row] = null;
+        clearDirty(row);
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = row;
+        size--;
+    }
+
+    /**
+     * Forget a world id (after its rows are removed) so the World can be collected.
+     */
+    public void releaseWorld(World w) {
+        Integer id = worldIds.remove(w.getUID());
+        if (id != null) {
+            worlds.set(id, null);
+        }
+    }
+
+    public World world(int row) {
+        return worlds.get(world[row]);
+    }
+
+    public int x(int row) {
+        return (int) (blockKey[row] >> 38);
+    }
+
+    public int y(int row) {
+        return (int) (blockKey[row] << 52 >> 52);
+    }
+
+    public int z(int row) {
+        return (int) (blockKey[row] << 26 >> 38);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Rows in use lie below this; a row below it is free if its world id is -1.
+     */
+    public int rowLimit() {
+        return rows;
+    }
+
+    /**
+     * Flag a row for the next journal save.
+     */
+    public void markDirty(int row) {
+        dirty[row >>> 6] |= 1L << row;
+    }
+
+    public boolean isDirty(int row) {
+        return (dirty[row >>> 6] & 1L << row) != 0;
+    }
+
+    public void clearDirty(int row) {
+        dirty[row >>> 6] &= ~(1L << row);
+    }
+
+    /**
+     * @return the first dirty row at or after {@code from}, or -1
+     */
+    public int nextDirty(int from) {
+        int word = from >>> 6;
+        if (word >= dirty.length) {
+            return -1;
+        }
+        long bits = dirty[word] & -1L << from;
+        while (bits == 0) {
+            if (++word == dirty.length) {
+                return -1;
+            }
+            bits = dirty[word];
+        }
+        return word * 64 + Long.numberOfTrailingZeros(bits);
+    }
+
+    // x and z: 26 bits each (+-33M), y: 12 bits (+-2048)
+    private static long pack(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | (y & 0xFFF);
+    }
+
+    private static int hash(int worldId, long key) {
+        long h = (key ^ (long) worldId << 58) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    private void insert(int row) {
+        int slot = hash(world[row], blockKey[row]) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = row + 1;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int row = 0; row < rows; row++) {
+            if (world[row] >= 0) {
+                insert(row);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        int old = world != null ? world.length : 0;
+        world = world == null ? new int[capacity] : Arrays.copyOf(world, capacity);
+        Arrays.fill(world, old, capacity, -1);
+        blockKey = blockKey == null ? new long[capacity] : Arrays.copyOf(blockKey, capacity);
+        progress = progress == null ? new double[capacity] : Arrays.copyOf(progress, capacity);
+        fuel = fuel == null ? new int[capacity] : Arrays.copyOf(fuel, capacity);
+        rate = rate == null ? new double[capacity] : Arrays.copyOf(rate, capacity);
+        since = since == null ? new long[capacity] : Arrays.copyOf(since, capacity);
+        dueAt = dueAt == null ? new long[capacity] : Arrays.copyOf(dueAt, capacity);
+        sleepStamp = sleepStamp == null ? new long[capacity] : Arrays.copyOf(sleepStamp, capacity);
+        offlineSince = offlineSince == null ? new long[capacity] : Arrays.copyOf(offlineSince, capacity);
+        credit = credit == null ? new double[capacity] : Arrays.copyOf(credit, capacity);
+        queued = queued == null ? new boolean[capacity] : Arrays.copyOf(queued, capacity);
+        chunkLoaded = chunkLoaded == null ? new boolean[capacity] : Arrays.copyOf(chunkLoaded, capacity);
+        inventory = inventory == null ? new Inventory[capacity] : Arrays.copyOf(inventory, capacity);
+        stones = stones == null ? new StoneIndex.ChunkStones[capacity] : Arrays.copyOf(stones, capacity);
+        int words = (capacity + 63) >>> 6;
+        dirty = dirty == null ? new long[words] : Arrays.copyOf(dirty, words);
+    }
+}
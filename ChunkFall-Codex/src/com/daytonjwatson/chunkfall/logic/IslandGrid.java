@@ -0,0 +1,123 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+
+/**
+ * Seed math behind {@link IslandLayout}, keyed by a plain world seed.
+ *
+ * Deliberately free of Bukkit types so the offline tools compute exactly the same
+ * kept chunks as the plugin.
+ */
+public class IslandGrid {
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private static final int CACHE_SIZE = 4096; // power of two
+    private static final int CACHE_MASK = CACHE_SIZE - 1;
+
+    private final int regionSize;
+
+    // Entries are immutable, so a racy read sees either a complete entry or an older one
+    private final CacheEntry[] cache = new CacheEntry[CACHE_SIZE];
+
+    public IslandGrid(int regionSize) {
+        this.regionSize = Math.max(1, regionSize);
+    }
+
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    public int regionOf(int chunkCoord) {
+        return Math.floorDiv(chunkCoord, regionSize);
+    }
+
+    public boolean isIslandChunk(long worldSeed, int cx, int cz) {
+        return keptChunkFor(worldSeed, regionOf(cx), regionOf(cz)) == ChunkKeyUtil.chunkKey(cx, cz);
+    }
+
+    /**
+     * The kept chunk of a region, packed with {@link ChunkKeyUtil#chunkKey(int, int)}.
+     */
+    public long keptChunkFor(long worldSeed, int regionX, int regionZ) {
+        // Special case: region (0,0) always keeps chunk (0,0) so fresh worlds never spawn in void
+        if (regionX == 0 && regionZ == 0) {
+            return ChunkKeyUtil.chunkKey(0, 0);
+        }
+
+        int slot = slot(worldSeed, regionX, regionZ);
+
+        CacheEntry entry = cache[slot];
+        if (entry != null && entry.worldSeed == worldSeed && entry.regionX == regionX && entry.regionZ == regionZ) {
+            return entry.kept;
+        }
+
+        long kept = computeKeptChunk(worldSeed, regionX, regionZ);
+        cache[slot] = new CacheEntry(worldSeed, regionX, regionZ, kept);
+        return kept;
+    }
+
+    private long computeKeptChunk(long worldSeed, int regionX, int regionZ) {
+        long seed = worldSeed
+                ^ (regionX * 341873128712L)
+                ^ (regionZ * 132897987541L);
+
+        // new Random(seed): initial scramble
+        long state = (seed ^ MULTIPLIER) & MASK;
+
+        // random.nextInt(regionSize), twice, exactly as java.util.Random does it
+        int offsetX;
+        int offsetZ;
+        int bound = regionSize;
+        int m = bound - 1;
+
+        if ((bound & m) == 0) {
+            state = (state * MULTIPLIER + ADDEND) & MASK;
+            offsetX = (int) ((bound * (long) (int) (state >>> 17)) >> 31);
+            state = (state * MULTIPLIER + ADDEND) & MASK;
+            offsetZ = (int) ((bound * (long) (int) (state >>> 17)) >> 31);
+        } else {
+            int u;
+            do {
+                state = (state * MULTIPLIER + ADDEND) & MASK;
+                u = (int) (state >>> 17);
+                offsetX = u % bound;
+            } while (u - offsetX + m < 0);
+
+            do {
+                state = (state * MULTIPLIER + ADDEND) & MASK;
+                u = (int) (state >>> 17);
+                offsetZ = u % bound;
+            } while (u - offsetZ + m < 0);
+        }
+
+        return ChunkKeyUtil.chunkKey(
+                regionX * regionSize + offsetX,
+                regionZ * regionSize + offsetZ
+        );
+    }
+
+    private static int slot(long worldSeed, int regionX, int regionZ) {
+        long h = worldSeed ^ (regionX * 0x9E3779B97F4A7C15L) ^ (regionZ * 0xC2B2AE3D27D4EB4FL);
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        return (int) h & CACHE_MASK;
+    }
+
+    private static final class CacheEntry {
+        final long worldSeed;
+        final int regionX;
+        final int regionZ;
+        final long kept;
+
+        CacheEntry(long worldSeed, int regionX, int regionZ, long kept) {
+            this.worldSeed = worldSeed;
+            this.regionX = regionX;
+            this.regionZ = regionZ;
+            this.kept = kept;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
+import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+import org.bukkit.generator.WorldInfo;
+
+/**
+ * Which chunk of each island region is kept.
+ *
+ * The layout is the one ChunkFall has always used: a java.util.Random seeded from the world
+ * seed and region coordinates picks an (x, z) offset inside the region. The two nextInt calls
+ * are replayed inline on a local long instead of creating a Random, and answers are kept in a
+ * small direct-mapped cache, so a cache hit allocates nothing. Safe to call from any thread,
+ * including worldgen threads. The math itself lives in {@link IslandGrid}.
+ *
+ * Public API for other plugins: {@link #isIslandChunk(WorldInfo, int, int)} and
+ * {@link #keptChunkFor(WorldInfo, int, int)}.
+ */
+public class IslandLayout {
+
+    private final IslandGrid grid;
+
+    public IslandLayout(ChunkFallConfig config) {
+        this.grid = new IslandGrid(config.getRegionSizeChunks());
+    }
+
+    public int getRegionSize() {
+        return grid.getRegionSize();
+    }
+
+    public int regionOf(int chunkCoord) {
+        return grid.regionOf(chunkCoord);
+    }
+
+    /**
+     * True if (cx, cz) is the single chunk kept as an island in its region.
+     */
+    public boolean isIslandChunk(WorldInfo world, int cx, int cz) {
+        return grid.isIslandChunk(world.getSeed(), cx, cz);
+    }
+
+    /**
+     * The kept chunk of a region, packed with {@link ChunkKeyUtil#chunkKey(int, int)}.
+     * Unpack with {@link ChunkKeyUtil#keyX(long)} / {@link ChunkKeyUtil#keyZ(long)}.
+     */
+    public long keptChunkFor(WorldInfo world, int regionX, int regionZ) {
+        return grid.keptChunkFor(world.getSeed(), regionX, regionZ);
+    }
+}
@@ -2,51 +2,125 @@ package com.daytonjwatson.chunkfall.logic;
 
 import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
 import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Material;
-import org.bukkit.World;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockState;
-import org.bukkit.block.CreatureSpawner;
-import org.bukkit.entity.EntityType;
+import org.bukkit.block.data.Ageable;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.generator.LimitedRegion;
+import org.bukkit.generator.WorldInfo;
+import org.bukkit.generator.structure.GeneratedStructure;
+import org.bukkit.generator.structure.Structure;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps the fortress rooms that matter: the blaze spawner room (always) and the nether wart
+ * room. The wart room has the same size as the castle entrance, so those chunks are checked
+ * for wart; every other nether chunk is answered from the structure index alone.
+ */
 public class NetherProtection {
 
+    private static final Set<Material> NETHER_WART = EnumSet.of(Material.NETHER_WART);
+
     private final ChunkFallConfig config;
+    private final StructureIndex structureIndex;
+
+    // Every NETHER_WART block state (one per age), for palette lookups
+    private final List<BlockData> netherWartStates;
 
-    public NetherProtection(ChunkFallConfig config) {
+    public NetherProtection(ChunkFallConfig config, StructureIndex structureIndex) {
         this.config = config;
+        this.structureIndex = structureIndex;
+        this.netherWartStates = netherWartStates();
+    }
+
+    private static List<BlockData> netherWartStates() {
+        List<BlockData> states = new ArrayList<>();
+        Ageable wart = (Ageable) Material.NETHER_WART.createBlockData();
+        for (int age = 0; age <= wart.getMaximumAge(); age++) {
+            Ageable state = (Ageable) Material.NETHER_WART.createBlockData();
+            state.setAge(age);
+            states.add(state);
+        }
+        return states;
+    }
+
+    public boolean isEnabled() {
+        return config.isProtectNetherFortressEssentials();
+    }
+
+    /**
+     * Where (cx, cz) sits in the fortresses it belongs to. {@code structures} come from
+     * {@code Chunk.getStructures()} or {@code LimitedRegion.getStructures(cx, cz)}.
+     */
+    public StructureIndex.Match matchFortress(WorldInfo world, Collection<GeneratedStructure> structures,
+                                             int cx, int cz) {
+        return structureIndex.match(world, structures, Structure.FORTRESS, cx, cz);
+    }
+
+    /**
+     * Palette check: false means the chunk certainly has no nether wart, without reading
+     * a single block. True still needs {@link #scan} (palettes can hold stale entries).
+     */
+    public boolean mayContainNetherWart(Chunk chunk) {
+        for (BlockData state : netherWartStates) {
+            if (chunk.contains(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Look for nether wart in a snapshot, off the main thread.
+     */
+    public CompletableFuture<ProtectionScanner.ScanResult> scan(ProtectionScanner scanner, WorldInfo world,
+                                                                ChunkSnapshot snapshot) {
+        return scanner.scan(snapshot, world.getMinHeight(), world.getMaxHeight(), NETHER_WART);
+    }
+
+    /**
+     * Main-thread half of {@link #scan}.
+     */
+    public boolean shouldProtectNetherChunk(ProtectionScanner.ScanResult result) {
+        return result.isFound();
     }
 
-    public boolean shouldProtectNetherChunk(Chunk chunk) {
+    /**
+     * Worldgen-thread variant used by VoidingPopulator.
+     */
+    public boolean shouldProtectNetherChunk(WorldInfo world, LimitedRegion region, int cx, int cz) {
         if (!config.isProtectNetherFortressEssentials()) {
             return false;
         }
-        return chunkHasBlazeSpawnerOrNetherWart(chunk);
+
+        switch (matchFortress(world, region.getStructures(cx, cz), cx, cz)) {
+            case PROTECTED:
+                return true;
+            case CANDIDATE:
+                return regionHasNetherWart(world, region, cx, cz);
+            default:
+                return false;
+        }
     }
 
-    private boolean chunkHasBlazeSpawnerOrNetherWart(Chunk chunk) {
-        World world = chunk.getWorld();
+    private boolean regionHasNetherWart(WorldInfo world, LimitedRegion region, int cx, int cz) {
         int minY = world.getMinHeight();
         int maxY = world.getMaxHeight();
+        int baseX = cx << 4;
+        int baseZ = cz << 4;
 
-        for (int x = 0; x < 16; x++) {
-            for (int z = 0; z < 16; z++) {
+        for (int x = baseX; x < baseX + 16; x++) {
+            for (int z = baseZ; z < baseZ + 16; z++) {
                 for (int y = minY; y < maxY; y++) {
-                    Block block = chunk.getBlock(x, y, z);
-                    Material type = block.getType();
-
-                    if (type == Material.NETHER_WART) {
+                    if (region.getType(x, y, z) == Material.NETHER_WART) {
                         return true;
                     }
-
-                    if (type == Material.SPAWNER) {
-                        BlockState state = block.getState();
-                        if (state instanceof CreatureSpawner spawner) {
-                            if (spawner.getSpawnedType() == EntityType.BLAZE) {
-                                return true;
-                            }
-                        }
-                    }
                 }
             }
         }
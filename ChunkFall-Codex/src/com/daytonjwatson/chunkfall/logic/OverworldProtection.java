@@ -1,73 +1,68 @@
 package com.daytonjwatson.chunkfall.logic;
 
 import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
-import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
-import org.bukkit.Chunk;
-import org.bukkit.Material;
-import org.bukkit.World;
+import org.bukkit.generator.WorldInfo;
+import org.bukkit.generator.structure.GeneratedStructure;
+import org.bukkit.generator.structure.Structure;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collection;
 
 public class OverworldProtection {
 
     private final ChunkFallConfig config;
-    private final Set<Long> protectedChunks = new HashSet<>();
+    // Protected chunks survive restarts, so neighbors marked now stay protected later
+    private final ChunkLedgerManager ledgers;
+    private final StructureIndex structureIndex;
 
-    public OverworldProtection(ChunkFallConfig config) {
+    public OverworldProtection(ChunkFallConfig config, ChunkLedgerManager ledgers, StructureIndex structureIndex) {
         this.config = config;
+        this.ledgers = ledgers;
+        this.structureIndex = structureIndex;
     }
 
-    public boolean shouldProtectOverworldChunk(World world, Chunk chunk, long key) {
+    /**
+     * Keep the End portal room (and optionally its neighbors). {@code structures} are the
+     * structures the chunk belongs to, from {@code Chunk.getStructures()} or
+     * {@code LimitedRegion.getStructures(cx, cz)}, so no block is ever scanned.
+     */
+    public boolean shouldProtectOverworldChunk(WorldInfo world, Collection<GeneratedStructure> structures,
+                                               int cx, int cz) {
         if (!config.isProtectEndPortalRoom()) {
             return false;
         }
 
-        // Already marked protected (e.g. neighbor of portal chunk)
-        if (protectedChunks.contains(key)) {
+        // Already marked protected (portal room footprint or neighbor)
+        if (ledgers.forWorld(world).isProtected(cx, cz)) {
             return true;
         }
 
-        // Check for END_PORTAL_FRAME in this chunk
-        if (chunkHasEndPortalFrame(chunk)) {
-            protectedChunks.add(key);
-
-            if (config.isProtectEndPortalNeighbors()) {
-                markNeighborChunksProtected(world, chunk.getX(), chunk.getZ());
+        for (GeneratedStructure structure : structures) {
+            if (structure.getStructure() != Structure.STRONGHOLD) {
+                continue;
             }
-            return true;
-        }
 
-        return false;
-    }
+            // The first chunk of a stronghold records the whole portal room, so chunks
+            // around it are protected no matter which one loads first
+            StructureIndex.Footprint footprint =
+                    structureIndex.footprintOf(world, structure, fp -> markFootprintProtected(world, fp));
 
-    private boolean chunkHasEndPortalFrame(Chunk chunk) {
-        World world = chunk.getWorld();
-        int minY = world.getMinHeight();
-        int maxY = world.getMaxHeight();
-
-        for (int x = 0; x < 16; x++) {
-            for (int z = 0; z < 16; z++) {
-                for (int y = minY; y < maxY; y++) {
-                    if (chunk.getBlock(x, y, z).getType() == Material.END_PORTAL_FRAME) {
-                        return true;
-                    }
-                }
+            if (footprint.match(cx, cz) == StructureIndex.Match.PROTECTED) {
+                return true;
             }
         }
+
         return false;
     }
 
-    private void markNeighborChunksProtected(World world, int cx, int cz) {
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dz = -1; dz <= 1; dz++) {
-                if (dx == 0 && dz == 0) {
-                    continue;
+    private void markFootprintProtected(WorldInfo world, StructureIndex.Footprint footprint) {
+        ChunkLedger ledger = ledgers.forWorld(world);
+        int margin = config.isProtectEndPortalNeighbors() ? 1 : 0;
+
+        for (int[] area : footprint.getProtectedAreas()) {
+            for (int cx = area[0] - margin; cx <= area[2] + margin; cx++) {
+                for (int cz = area[1] - margin; cz <= area[3] + margin; cz++) {
+                    ledger.markProtected(cx, cz);
                 }
-                int nx = cx + dx;
-                int nz = cz + dz;
-                long nKey = ChunkKeyUtil.chunkKey(world, nx, nz);
-                protectedChunks.add(nKey);
             }
         }
     }
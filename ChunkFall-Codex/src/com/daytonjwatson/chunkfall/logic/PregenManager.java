@@ -0,0 +1,542 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import com.daytonjwatson.chunkfall.config.ChunkFallConfig;
+import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+
+/**
+ * Pregenerates a square around (0,0) for /chunkfall pregen.
+ *
+ * Two passes over the island regions, nearest ring first:
+ *  1) the kept (island) chunk of every region, so playable land exists early
+ *  2) every other chunk, region by region, chunks already marked protected first
+ *
+ * Chunks that already exist are skipped. Where the server offers getChunkAtAsync (Paper)
+ * chunks load asynchronously with a cap on how many are in flight; otherwise they load
+ * synchronously within a per-tick time budget. Nothing is started in a tick that follows
+ * a slow one.
+ *
+ * Progress is a region cursor saved to pregen.yml, so a job survives restarts and can be
+ * paused and resumed. Resuming restarts the saved region; its finished chunks already
+ * exist and are skipped, and the saved count leaves them out so they are not counted twice.
+ */
+public class PregenManager {
+
+    public enum Phase { ISLANDS, TERRAIN }
+
+    private static final long SAVE_EVERY_TICKS = 200;
+
+    private final Plugin plugin;
+    private final ChunkFallConfig config;
+    private final IslandLayout islandLayout;
+    private final ChunkLedgerManager ledgers;
+    private final File stateFile;
+
+    // World#getChunkAtAsync(int, int) on Paper, null on plain Spigot
+    private final Method getChunkAtAsync;
+
+    // Persistent job state; worldName == null means no job
+    private String worldName;
+    private int radiusChunks;
+    private Phase phase;
+    private long regionCursor;
+    private long chunksDone;
+    private boolean paused;
+
+    // Runtime state
+    private BukkitTask task;
+    private int jobId;                 // completions from a cancelled job are ignored
+    private long[] regionChunks;       // chunks of the region at regionCursor, in load order
+    private int regionChunkIndex;
+    private final TreeMap<Long, Integer> inFlightByRegion = new TreeMap<>();
+    // Chunks counted per region that a resume could still redo
+    private final TreeMap<Long, Integer> doneByRegion = new TreeMap<>();
+    private int inFlight;
+    private long lastTickNanos;
+    private long ticks;
+    private long sessionStartNanos;
+    private long sessionStartDone;
+    private boolean warnedLoadFailure;
+
+    public PregenManager(Plugin plugin, ChunkFallConfig config, IslandLayout islandLayout, ChunkLedgerManager ledgers) {
+        this.plugin = plugin;
+        this.config = config;
+        this.islandLayout = islandLayout;
+        this.ledgers = ledgers;
+        this.stateFile = new File(plugin.getDataFolder(), "pregen.yml");
+        this.getChunkAtAsync = findGetChunkAtAsync();
+    }
+
+    private static Method findGetChunkAtAsync() {
+        try {
+            return World.class.getMethod("getChunkAtAsync", int.class, int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Pick up a job saved by a previous run.
+     */
+    public void load() {
+        if (!stateFile.isFile()) {
+            return;
+        }
+
+        YamlConfiguration state = YamlConfiguration.loadConfiguration(stateFile);
+        this.worldName = state.getString("world");
+        if (worldName == null) {
+            return;
+        }
+        this.radiusChunks = state.getInt("radius-chunks", 0);
+        this.phase = Phase.valueOf(state.getString("phase", Phase.ISLANDS.name()));
+        this.regionCursor = state.getLong("region-cursor", 0L);
+        this.chunksDone = state.getLong("chunks-done", 0L);
+        this.paused = state.getBoolean("paused", false);
+
+        plugin.getLogger().info("[ChunkFall] Pregeneration of " + worldName + " restored at "
+                + phase + " region " + regionCursor + "/" + totalRegions() + (paused ? " (paused)." : "."));
+
+        if (!paused) {
+            startTask();
+        }
+    }
+
+    /**
+     * @return false if a job is already running.
+     */
+    public boolean start(World world, int radiusBlocks) {
+        if (worldName != null) {
+            return false;
+        }
+
+        this.worldName = world.getName();
+        this.radiusChunks = (radiusBlocks + 15) >> 4;
+        this.phase = Phase.ISLANDS;
+        this.regionCursor = 0;
+        this.chunksDone = 0;
+        this.paused = false;
+        this.regionChunks = null;
+        doneByRegion.clear();
+
+        save();
+        startTask();
+        return true;
+    }
+
+    public boolean pause() {
+        if (worldName == null || paused) {
+            return false;
+        }
+        paused = true;
+        stopTask();
+        save();
+        return true;
+    }
+
+    public boolean resume() {
+        if (worldName == null || !paused) {
+            return false;
+        }
+        paused = false;
+        save();
+        startTask();
+        return true;
+    }
+
+    public boolean cancel() {
+        if (worldName == null) {
+            return false;
+        }
+        finishJob();
+        return true;
+    }
+
+    /**
+     * Save progress (plugin disable). Chunks still in flight are redone next time.
+     */
+    public void shutdown() {
+        stopTask();
+        if (worldName != null) {
+            save();
+        }
+    }
+
+    private void startTask() {
+        stopTask();
+        jobId++;
+        // Restart from the resume point, as after a restart: chunks in flight are dropped
+        long cursor = resumeCursor();
+        chunksDone = resumeChunksDone(cursor);
+        regionCursor = cursor;
+        regionChunks = null;
+        doneByRegion.clear();
+        inFlightByRegion.clear();
+        inFlight = 0;
+        lastTickNanos = 0;
+        sessionStartNanos = System.nanoTime();
+        sessionStartDone = chunksDone;
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    private void stopTask() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        long sinceLastTick = lastTickNanos == 0 ? 0 : now - lastTickNanos;
+        lastTickNanos = now;
+
+        World world = Bukkit.getWorld(worldName);
+        if (world == null) {
+            plugin.getLogger().warning("[ChunkFall] Pregeneration paused: world " + worldName + " is not loaded.");
+            pause();
+            return;
+        }
+
+        if (++ticks % SAVE_EVERY_TICKS == 0) {
+            save();
+        }
+
+        // Server already behind: don't add to it this tick
+        if (sinceLastTick > config.getPregenMaxTickMs() * 1_000_000L) {
+            return;
+        }
+
+        long deadline = now + (long) (config.getPregenTickBudgetMs() * 1_000_000L);
+        int maxInFlight = getChunkAtAsync != null ? config.getPregenMaxInFlight() : 1;
+        int started = 0;
+
+        while (started < config.getPregenMaxChunksPerTick() && System.nanoTime() < deadline) {
+            if (inFlight >= maxInFlight) {
+                break;
+            }
+
+            if (!nextRegionWithWork(world)) {
+                // Phase done once everything it started has finished
+                if (inFlight == 0) {
+                    advancePhase();
+                }
+                return;
+            }
+
+            long key = regionChunks[regionChunkIndex++];
+            int cx = ChunkKeyUtil.keyX(key);
+            int cz = ChunkKeyUtil.keyZ(key);
+
+            if (world.isChunkGenerated(cx, cz)) {
+                countDone(regionCursor);
+                continue;
+            }
+
+            load(world, cx, cz);
+            started++;
+        }
+    }
+
+    private void load(World world, int cx, int cz) {
+        long region = regionCursor;
+        inFlight++;
+        inFlightByRegion.merge(region, 1, Integer::sum);
+
+        if (getChunkAtAsync == null) {
+            world.getChunkAt(cx, cz);
+            loaded(jobId, region, null);
+            return;
+        }
+
+        int job = jobId;
+        try {
+            CompletableFuture<?> future = (CompletableFuture<?>) getChunkAtAsync.invoke(world, cx, cz);
+            future.whenComplete((chunk, error) -> {
+                if (Bukkit.isPrimaryThread()) {
+                    loaded(job, region, error);
+                } else {
+                    Bukkit.getScheduler().runTask(plugin, () -> loaded(job, region, error));
+                }
+            });
+        } catch (ReflectiveOperationException e) {
+            loaded(job, region, e);
+        }
+    }
+
+    private void loaded(int job, long region, Throwable error) {
+        if (job != jobId) {
+            return; // job was cancelled or restarted meanwhile
+        }
+
+        inFlight--;
+        inFlightByRegion.computeIfPresent(region, (r, n) -> n > 1 ? n - 1 : null);
+        countDone(region);
+
+        if (error != null && !warnedLoadFailure) {
+            warnedLoadFailure = true;
+            plugin.getLogger().log(Level.WARNING, "[ChunkFall] Pregeneration failed to load a chunk.", error);
+        }
+    }
+
+    private void countDone(long region) {
+        chunksDone++;
+        doneByRegion.merge(region, 1, Integer::sum);
+    }
+
+    /**
+     * Oldest region that still has chunks loading (else the current one), so none are lost
+     * on a crash.
+     */
+    private long resumeCursor() {
+        return inFlightByRegion.isEmpty() ? regionCursor : inFlightByRegion.firstKey();
+    }
+
+    /**
+     * Chunks done before the region a resume starts at; the ones counted in it and later
+     * are counted again when it is redone.
+     */
+    private long resumeChunksDone(long cursor) {
+        // Regions before the cursor are never redone
+        doneByRegion.headMap(cursor).clear();
+        long redone = 0;
+        for (int n : doneByRegion.values()) {
+            redone += n;
+        }
+        return chunksDone - redone;
+    }
+
+    /**
+     * Move the cursor until the current region still has chunks to start.
+     *
+     * @return false once every region of this phase has been handed out.
+     */
+    private boolean nextRegionWithWork(World world) {
+        while (true) {
+            if (regionChunks != null && regionChunkIndex < regionChunks.length) {
+                return true;
+            }
+            if (regionChunks != null) {
+                regionCursor++;
+            }
+            if (regionCursor >= totalRegions()) {
+                return false;
+            }
+            regionChunks = chunksOfRegion(world, regionCursor);
+            regionChunkIndex = 0;
+        }
+    }
+
+    private long[] chunksOfRegion(World world, long index) {
+        long region = regionAt(index);
+        int regionX = ChunkKeyUtil.keyX(region);
+        int regionZ = ChunkKeyUtil.keyZ(region);
+        long kept = islandLayout.keptChunkFor(world, regionX, regionZ);
+
+        if (phase == Phase.ISLANDS) {
+            return inRadius(ChunkKeyUtil.keyX(kept), ChunkKeyUtil.keyZ(kept))
+                    ? new long[]{kept}
+                    : new long[0];
+        }
+
+        // Known protected chunks (e.g. portal room footprints) first, then the rest
+        ChunkLedger ledger = ledgers.forWorld(world);
+        List<Long> first = new ArrayList<>();
+        List<Long> rest = new ArrayList<>();
+        int size = islandLayout.getRegionSize();
+
+        for (int cx = regionX * size; cx < (regionX + 1) * size; cx++) {
+            for (int cz = regionZ * size; cz < (regionZ + 1) * size; cz++) {
+                long key = ChunkKeyUtil.chunkKey(cx, cz);
+                if (key == kept || !inRadius(cx, cz)) {
+                    continue; // island was done in the first pass
+                }
+                (ledger.isProtected(cx, cz) ? first : rest).add(key);
+            }
+        }
+
+        long[] result = new long[first.size() + rest.size()];
+        int i = 0;
+        for (long key : first) {
+            result[i++] = key;
+        }
+        for (long key : rest) {
+            result[i++] = key;
+        }
+        return result;
+    }
+
+    private void advancePhase() {
+        if (phase == Phase.ISLANDS) {
+            plugin.getLogger().info("[ChunkFall] Pregeneration of " + worldName + ": islands done, generating terrain.");
+            phase = Phase.TERRAIN;
+            regionCursor = 0;
+            regionChunks = null;
+            doneByRegion.clear(); // region indices start over
+            save();
+            return;
+        }
+
+        plugin.getLogger().info("[ChunkFall] Pregeneration of " + worldName + " finished: "
+                + chunksDone + " chunks in " + formatDuration(elapsedSeconds()) + ".");
+        finishJob();
+    }
+
+    private void finishJob() {
+        stopTask();
+        jobId++;
+        worldName = null;
+        regionChunks = null;
+        inFlightByRegion.clear();
+        doneByRegion.clear();
+        inFlight = 0;
+        if (stateFile.exists() && !stateFile.delete()) {
+            plugin.getLogger().warning("[ChunkFall] Could not delete " + stateFile + ".");
+        }
+    }
+
+    private void save() {
+        YamlConfiguration state = YamlConfiguration.loadConfiguration(stateFile);
+        state.set("world", worldName);
+        state.set("radius-chunks", radiusChunks);
+        state.set("phase", phase.name());
+        long cursor = resumeCursor();
+        state.set("region-cursor", cursor);
+        state.set("chunks-done", resumeChunksDone(cursor));
+        state.set("paused", paused);
+
+        try {
+            state.save(stateFile);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "[ChunkFall] Could not save " + stateFile + ".", e);
+        }
+    }
+
+    private boolean inRadius(int cx, int cz) {
+        return Math.abs(cx) <= radiusChunks && Math.abs(cz) <= radiusChunks;
+    }
+
+    /**
+     * Rings of regions around region (0,0) needed to cover the radius.
+     */
+    private int regionRadius() {
+        return Math.max(islandLayout.regionOf(radiusChunks), -islandLayout.regionOf(-radiusChunks));
+    }
+
+    private long totalRegions() {
+        long side = 2L * regionRadius() + 1;
+        return side * side;
+    }
+
+    /**
+     * Region at a cursor position. Regions are walked in square rings around (0,0),
+     * ring r holding 8r regions, so the cursor alone identifies a region.
+     */
+    static long regionAt(long index) {
+        if (index == 0) {
+            return ChunkKeyUtil.chunkKey(0, 0);
+        }
+
+        int r = (int) Math.ceil((Math.sqrt(index + 1) - 1) / 2);
+        long before = (2L * r - 1) * (2L * r - 1);
+        int offset = (int) (index - before);
+        int side = offset / (2 * r);
+        int pos = offset % (2 * r);
+
+        switch (side) {
+            case 0:
+                return ChunkKeyUtil.chunkKey(r, -r + 1 + pos);
+            case 1:
+                return ChunkKeyUtil.chunkKey(r - 1 - pos, r);
+            case 2:
+                return ChunkKeyUtil.chunkKey(-r, r - 1 - pos);
+            default:
+                return ChunkKeyUtil.chunkKey(-r + 1 + pos, -r);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Status
+    // ---------------------------------------------------------------------
+
+    public boolean hasJob() {
+        return worldName != null;
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public boolean isAsyncLoading() {
+        return getChunkAtAsync != null;
+    }
+
+    public long getRegionCursor() {
+        return regionCursor;
+    }
+
+    public long getTotalRegions() {
+        return totalRegions();
+    }
+
+    public long getChunksDone() {
+        return chunksDone;
+    }
+
+    public long getTotalChunks() {
+        long side = 2L * radiusChunks + 1;
+        return side * side;
+    }
+
+    /**
+     * Chunks per second since this run started or resumed.
+     */
+    public double getRate() {
+        double seconds = elapsedSeconds();
+        return seconds > 0 ? (chunksDone - sessionStartDone) / seconds : 0;
+    }
+
+    /**
+     * Estimated seconds left, or -1 if there is no rate yet.
+     */
+    public long getEtaSeconds() {
+        double rate = getRate();
+        if (paused || rate <= 0) {
+            return -1;
+        }
+        return (long) (Math.max(0, getTotalChunks() - chunksDone) / rate);
+    }
+
+    private double elapsedSeconds() {
+        return (System.nanoTime() - sessionStartNanos) / 1_000_000_000.0;
+    }
+
+    public static String formatDuration(double seconds) {
+        long total = (long) seconds;
+        long h = total / 3600;
+        long m = (total % 3600) / 60;
+        long s = total % 60;
+        return h > 0 ? String.format("%dh %02dm %02ds", h, m, s) : String.format("%dm %02ds", m, s);
+    }
+}
@@ -0,0 +1,174 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import com.daytonjwatson.chunkfall.config.PreserveRule;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Tag;
+import org.bukkit.block.data.BlockData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Preserve rules of one dimension, compiled into a table indexed by Material ordinal.
+ *
+ * Most materials are a single array read: dropped, or kept whatever their state and Y.
+ * Only materials with a Y band or block state fall back to their own short condition list.
+ */
+public class PreserveTable {
+
+    /** Clear the block. */
+    public static final int DROP = 0;
+    /** Keep the block. */
+    public static final int KEEP = 1;
+    /** Keep the block if {@link #matches} says so for its block data. */
+    public static final int CHECK_STATE = 2;
+
+    // modes[]: 0 = not preserved
+    private static final byte ALWAYS = 1;
+    private static final byte CONDITIONAL = 2;
+
+    private static final Material[] MATERIALS = Material.values();
+
+    private final byte[] modes = new byte[MATERIALS.length];
+    private final Condition[][] conditions = new Condition[MATERIALS.length][];
+    private boolean empty = true;
+
+    private PreserveTable() {
+    }
+
+    /**
+     * Compile a dimension's rules. Unknown materials, tags and states are logged and skipped.
+     */
+    public static PreserveTable compile(Collection<PreserveRule> rules, Logger logger) {
+        PreserveTable table = new PreserveTable();
+        for (PreserveRule rule : rules) {
+            for (String entry : rule.getBlocks()) {
+                for (Material material : resolve(entry, rule, logger)) {
+                    BlockData state = null;
+                    if (rule.getState() != null) {
+                        try {
+                            state = material.createBlockData(rule.getState());
+                        } catch (IllegalArgumentException e) {
+                            logger.warning("[ChunkFall] Preserve rule '" + rule.getName() + "': "
+                                    + material + " has no state " + rule.getState() + ", skipping it.");
+                            continue;
+                        }
+                    }
+                    table.add(material, new Condition(rule.getMinY(), rule.getMaxY(), state));
+                }
+            }
+        }
+        return table;
+    }
+
+    private static Collection<Material> resolve(String entry, PreserveRule rule, Logger logger) {
+        if (entry.startsWith("#")) {
+            NamespacedKey key = NamespacedKey.fromString(entry.substring(1).toLowerCase());
+            Tag<Material> tag = key != null ? Bukkit.getTag(Tag.REGISTRY_BLOCKS, key, Material.class) : null;
+            if (tag == null) {
+                logger.warning("[ChunkFall] Preserve rule '" + rule.getName() + "': unknown block tag " + entry + ".");
+                return List.of();
+            }
+            return tag.getValues();
+        }
+
+        Material material = Material.matchMaterial(entry);
+        if (material == null || !material.isBlock()) {
+            logger.warning("[ChunkFall] Preserve rule '" + rule.getName() + "': unknown block " + entry + ".");
+            return List.of();
+        }
+        return Set.of(material);
+    }
+
+    private void add(Material material, Condition condition) {
+        int ordinal = material.ordinal();
+        empty = false;
+        if (modes[ordinal] == ALWAYS) {
+            return;
+        }
+        if (condition.isUnconditional()) {
+            modes[ordinal] = ALWAYS;
+            conditions[ordinal] = null;
+            return;
+        }
+
+        modes[ordinal] = CONDITIONAL;
+        Condition[] existing = conditions[ordinal];
+        List<Condition> list = new ArrayList<>();
+        if (existing != null) {
+            list.addAll(List.of(existing));
+        }
+        list.add(condition);
+        conditions[ordinal] = list.toArray(new Condition[0]);
+    }
+
+    /**
+     * True if no rule keeps anything in this dimension.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * What to do with a block of {@code type} at {@code y}, without looking at its state:
+     * {@link #DROP}, {@link #KEEP} or {@link #CHECK_STATE}.
+     */
+    public int classify(Material type, int y) {
+        int ordinal = type.ordinal();
+        byte mode = modes[ordinal];
+        if (mode != CONDITIONAL) {
+            return mode == ALWAYS ? KEEP : DROP;
+        }
+
+        int result = DROP;
+        for (Condition condition : conditions[ordinal]) {
+            if (y < condition.minY || y > condition.maxY) {
+                continue;
+            }
+            if (condition.state == null) {
+                return KEEP;
+            }
+            result = CHECK_STATE;
+        }
+        return result;
+    }
+
+    /**
+     * Second half of {@link #classify} for {@link #CHECK_STATE} blocks.
+     */
+    public boolean matches(Material type, int y, BlockData data) {
+        Condition[] list = conditions[type.ordinal()];
+        if (list == null) {
+            return modes[type.ordinal()] == ALWAYS;
+        }
+        for (Condition condition : list) {
+            if (y >= condition.minY && y <= condition.maxY
+                    && (condition.state == null || condition.state.matches(data))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Condition {
+        final int minY;
+        final int maxY;
+        // Parsed state: matches() only compares the properties the rule spelled out
+        final BlockData state;
+
+        Condition(int minY, int maxY, BlockData state) {
+            this.minY = minY;
+            this.maxY = maxY;
+            this.state = state;
+        }
+
+        boolean isUnconditional() {
+            return minY == Integer.MIN_VALUE && maxY == Integer.MAX_VALUE && state == null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches chunk snapshots for protection-relevant blocks on a worker pool.
+ *
+ * The snapshot is taken on the main thread; the block sweep runs here, split into
+ * 16-block sections with fork/join so a single chunk can use several cores. Empty
+ * sections are skipped without reading a block.
+ *
+ * Callers only get here once a palette check said the chunk may hold a target block,
+ * so this is the confirming cell-by-cell pass.
+ */
+public class ProtectionScanner {
+
+    private static final int SECTION_HEIGHT = 16;
+    private static final int SECTIONS_PER_TASK = 2;
+
+    private final ForkJoinPool pool;
+
+    public ProtectionScanner(int threads) {
+        int parallelism = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ChunkFall-Scan-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Scan y in [minY, maxY) for any of {@code targets}, stopping at the first hit.
+     * {@code minY} must be the world's min height so section indexes line up.
+     */
+    public CompletableFuture<ScanResult> scan(ChunkSnapshot snapshot, int minY, int maxY, Set<Material> targets) {
+        return CompletableFuture.supplyAsync(() -> {
+            ScanResult result = new ScanResult();
+            new SectionTask(snapshot, minY, minY, maxY, targets, result).invoke();
+            return result;
+        }, pool);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stop the workers. Callers apply (and so wait for) pending scans first.
+     */
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static final class ScanResult {
+        private volatile boolean found;
+
+        /**
+         * True if a target block was found.
+         */
+        public boolean isFound() {
+            return found;
+        }
+    }
+
+    private static final class SectionTask extends RecursiveAction {
+        private final ChunkSnapshot snapshot;
+        private final int worldMinY;
+        private final int fromY;
+        private final int toY;
+        private final Set<Material> targets;
+        private final ScanResult result;
+
+        SectionTask(ChunkSnapshot snapshot, int worldMinY, int fromY, int toY,
+                    Set<Material> targets, ScanResult result) {
+            this.snapshot = snapshot;
+            this.worldMinY = worldMinY;
+            this.fromY = fromY;
+            this.toY = toY;
+            this.targets = targets;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (result.found) {
+                return;
+            }
+
+            int sections = (toY - fromY + SECTION_HEIGHT - 1) / SECTION_HEIGHT;
+            if (sections > SECTIONS_PER_TASK) {
+                // Split on a section boundary
+                int midY = fromY + (sections / 2) * SECTION_HEIGHT;
+                invokeAll(
+                        new SectionTask(snapshot, worldMinY, fromY, midY, targets, result),
+                        new SectionTask(snapshot, worldMinY, midY, toY, targets, result)
+                );
+                return;
+            }
+
+            for (int sectionY = fromY; sectionY < toY; sectionY += SECTION_HEIGHT) {
+                if (snapshot.isSectionEmpty((sectionY - worldMinY) >> 4)) {
+                    continue; // all air
+                }
+
+                int endY = Math.min(sectionY + SECTION_HEIGHT, toY);
+                for (int y = sectionY; y < endY; y++) {
+                    if (result.found) {
+                        return; // another section already decided it
+                    }
+                    for (int x = 0; x < 16; x++) {
+                        for (int z = 0; z < 16; z++) {
+                            if (targets.contains(snapshot.getBlockType(x, y, z))) {
+                                result.found = true;
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Where the stone is in chunks that hold cobble generators: one bit per block, plus a count
+ * per layer. Built once per chunk from a snapshot read off the main thread, then kept
+ * current from block events, so finding the next stone for a generator reads no blocks.
+ *
+ * All generators in a chunk share its index. Main thread only, except the snapshot scan.
+ */
+public class StoneIndex {
+
+    // Columns of a chunk ordered by horizontal distance from each column, ties by x then z
+    private static final short[][] COLUMN_ORDER = new short[256][];
+
+    private final Plugin plugin;
+
+    // World -> chunk key -> stone of that chunk
+    private final Map<UUID, Map<Long, ChunkStones>> chunks = new HashMap<>();
+
+    // Stamp handed out whenever stone appears somewhere, so sleepers can tell it did
+    private long generation;
+
+    public StoneIndex(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * The index of a loaded chunk, or null while it is still being built (the first call
+     * starts the build).
+     */
+    public ChunkStones get(World world, int cx, int cz) {
+        Map<Long, ChunkStones> worldChunks = chunks.computeIfAbsent(world.getUID(), uid -> new HashMap<>());
+        long key = ChunkKeyUtil.chunkKey(cx, cz);
+        ChunkStones stones = worldChunks.get(key);
+        if (stones == null) {
+            stones = new ChunkStones(world.getMinHeight(), world.getMaxHeight() - world.getMinHeight());
+            worldChunks.put(key, stones);
+            build(world.getChunkAt(cx, cz), stones);
+            return null;
+        }
+        if (!stones.ready) {
+            return null;
+        }
+        stones.applyDirty(world, cx, cz);
+        return stones;
+    }
+
+    /**
+     * Like {@link #get}, but first tries a reference kept from an earlier call, which skips
+     * the map lookups while that chunk's index is still in use.
+     */
+    public ChunkStones get(ChunkStones cached, World world, int cx, int cz) {
+        if (cached != null && !cached.dropped) {
+            cached.applyDirty(world, cx, cz);
+            return cached;
+        }
+        return get(world, cx, cz);
+    }
+
+    private void build(Chunk chunk, ChunkStones stones) {
+        ChunkSnapshot snapshot = chunk.getChunkSnapshot(false, false, false);
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            long[] bits = new long[stones.layers * 4];
+            int sections = stones.layers >> 4;
+            for (int section = 0; section < sections; section++) {
+                if (snapshot.isSectionEmpty(section)) {
+                    continue;
+                }
+                int firstLayer = section << 4;
+                for (int layer = firstLayer; layer < firstLayer + 16; layer++) {
+                    for (int x = 0; x < 16; x++) {
+                        for (int z = 0; z < 16; z++) {
+                            if (snapshot.getBlockType(x, stones.minY + layer, z) == Material.STONE) {
+                                int bit = layer << 8 | x << 4 | z;
+                                bits[bit >> 6] |= 1L << bit;
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (plugin.isEnabled()) {
+                Bukkit.getScheduler().runTask(plugin, () -> stones.install(bits, ++generation));
+            }
+        });
+    }
+
+    /**
+     * A block in a possibly indexed chunk is about to change (events fire before the change);
+     * it is read again before the chunk's index is next used.
+     */
+    public void markChanged(Block block) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        Map<Long, ChunkStones> worldChunks = chunks.get(block.getWorld().getUID());
+        if (worldChunks == null) {
+            return;
+        }
+        ChunkStones stones = worldChunks.get(ChunkKeyUtil.chunkKey(block.getX() >> 4, block.getZ() >> 4));
+        if (stones != null) {
+            stones.markDirty(block.getX() & 15, block.getY() - stones.minY, block.getZ() & 15);
+        }
+    }
+
+    public void dropChunk(World world, int cx, int cz) {
+        Map<Long, ChunkStones> worldChunks = chunks.get(world.getUID());
+        if (worldChunks != null) {
+            ChunkStones stones = worldChunks.remove(ChunkKeyUtil.chunkKey(cx, cz));
+            if (stones != null) {
+                stones.dropped = true;
+            }
+            if (worldChunks.isEmpty()) {
+                chunks.remove(world.getUID());
+            }
+        }
+    }
+
+    public void dropWorld(World world) {
+        Map<Long, ChunkStones> worldChunks = chunks.remove(world.getUID());
+        if (worldChunks != null) {
+            for (ChunkStones stones : worldChunks.values()) {
+                stones.dropped = true;
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Map<Long, ChunkStones> worldChunks : chunks.values()) {
+            size += worldChunks.size();
+        }
+        return size;
+    }
+
+    private static short[] columnOrder(int column) {
+        short[] order = COLUMN_ORDER[column];
+        if (order == null) {
+            int[] keys = new int[256];
+            for (int other = 0; other < 256; other++) {
+                keys[other] = columnDistSq(column, other) << 8 | other;
+            }
+            Arrays.sort(keys);
+            order = new short[256];
+            for (int i = 0; i < 256; i++) {
+                order[i] = (short) (keys[i] & 0xFF);
+            }
+            COLUMN_ORDER[column] = order;
+        }
+        return order;
+    }
+
+    private static int columnDistSq(int a, int b) {
+        int dx = (a >> 4) - (b >> 4);
+        int dz = (a & 15) - (b & 15);
+        return dx * dx + dz * dz;
+    }
+
+    /**
+     * Stone of one chunk. Positions are packed as layer << 8 | x << 4 | z, with the layer
+     * counted from the world's min height and x/z chunk-local.
+     */
+    public final class ChunkStones {
+        final int minY;
+        final int layers;
+
+        private long[] bits;
+        private int[] layerCount;
+        private int total;
+        private long stamp;
+        private boolean ready;
+        private boolean dropped;
+
+        // Packed positions changed by events, re-read on next use; each listed once (the
+        // bitset, allocated on first change), so the list stays bounded even if no
+        // generator uses the index for a long time
+        private int[] dirty = new int[16];
+        private int dirtyCount;
+        private long[] dirtyBits;
+
+        ChunkStones(int minY, int layers) {
+            this.minY = minY;
+            this.layers = layers;
+        }
+
+        private void install(long[] bits, long stamp) {
+            this.bits = bits;
+            this.layerCount = new int[layers];
+            for (int layer = 0; layer < layers; layer++) {
+                int count = 0;
+                for (int i = layer * 4; i < layer * 4 + 4; i++) {
+                    count += Long.bitCount(bits[i]);
+                }
+                layerCount[layer] = count;
+                total += count;
+            }
+            this.stamp = stamp;
+            this.ready = true;
+        }
+
+        private void markDirty(int x, int layer, int z) {
+            if (layer < 0 || layer >= layers) {
+                return;
+            }
+            int pos = layer << 8 | x << 4 | z;
+            if (dirtyBits == null) {
+                dirtyBits = new long[layers * 4];
+            } else if ((dirtyBits[pos >> 6] & 1L << pos) != 0) {
+                return;
+            }
+            dirtyBits[pos >> 6] |= 1L << pos;
+            if (dirtyCount == dirty.length) {
+                dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+            }
+            dirty[dirtyCount++] = pos;
+        }
+
+        // Changes made while the snapshot was being read are caught here too
+        private void applyDirty(World world, int cx, int cz) {
+            int baseX = cx << 4;
+            int baseZ = cz << 4;
+            for (int i = 0; i < dirtyCount; i++) {
+                int pos = dirty[i];
+                dirtyBits[pos >> 6] &= ~(1L << pos);
+                Material type = world.getBlockAt(baseX + (pos >> 4 & 15), minY + (pos >> 8), baseZ + (pos & 15)).getType();
+                set(pos, type == Material.STONE);
+            }
+            dirtyCount = 0;
+            if (dirty.length > 64) {
+                dirty = new int[16];
+            }
+        }
+
+        /**
+         * Record stone (or its absence) at a packed position.
+         */
+        public void set(int pos, boolean stone) {
+            long mask = 1L << pos;
+            boolean was = (bits[pos >> 6] & mask) != 0;
+            if (was == stone) {
+                return;
+            }
+            int layer = pos >> 8;
+            if (stone) {
+                bits[pos >> 6] |= mask;
+                layerCount[layer]++;
+                total++;
+                stamp = ++generation;
+            } else {
+                bits[pos >> 6] &= ~mask;
+                layerCount[layer]--;
+                total--;
+            }
+        }
+
+        /**
+         * The stone a generator at (x, y, z) mines next, in the order of the old block scan:
+         * nearest layer pair first (above before below), then nearest column, ties by x then z.
+         *
+         * @param x chunk-local (same for z)
+         * @return the packed position, or -1 if there is no stone within the range
+         */
+        public int nearest(int x, int y, int z, int verticalRange) {
+            if (total == 0) {
+                return -1;
+            }
+            short[] order = columnOrder(x << 4 | z);
+            int column = x << 4 | z;
+            int layer = y - minY;
+
+            for (int dy = 0; dy <= verticalRange; dy++) {
+                int up = layer + dy;
+                int down = layer - dy;
+                int upColumn = up >= 0 && up < layers ? firstInLayer(up, order) : -1;
+                int downColumn = dy > 0 && down >= 0 && down < layers ? firstInLayer(down, order) : -1;
+
+                if (upColumn < 0 && downColumn < 0) {
+                    continue;
+                }
+                if (downColumn < 0 || (upColumn >= 0
+                        && columnDistSq(column, upColumn) <= columnDistSq(column, downColumn))) {
+                    return up << 8 | upColumn;
+                }
+                return down << 8 | downColumn;
+            }
+            return -1;
+        }
+
+        private int firstInLayer(int layer, short[] order) {
+            if (layerCount[layer] == 0) {
+                return -1;
+            }
+            int base = layer << 8;
+            for (short column : order) {
+                int pos = base | column;
+                if ((bits[pos >> 6] & 1L << pos) != 0) {
+                    return column;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Changes whenever stone appears in this chunk, so a generator that found none can
+         * sleep until it does.
+         */
+        public long getStamp() {
+            return stamp;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+import org.bukkit.generator.WorldInfo;
+import org.bukkit.generator.structure.GeneratedStructure;
+import org.bukkit.generator.structure.Structure;
+import org.bukkit.generator.structure.StructurePiece;
+import org.bukkit.util.BoundingBox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Which chunks of a stronghold or nether fortress are worth keeping, read from the world's
+ * structure data instead of scanning blocks.
+ *
+ * Bukkit's StructurePiece exposes only a bounding box, no piece type or template, so the
+ * rooms are recognised by their exact size in blocks (either rotation). This is a heuristic:
+ * no other piece of these structures shares these sizes today, but a game update that
+ * resizes one of these rooms makes it go unrecognised (never wrongly matched):
+ *  - Stronghold portal room: 11 x 8 x 16  -> protected
+ *  - Fortress blaze spawner room (throne): 7 x 8 x 9  -> protected
+ *  - Fortress 13 x 14 x 13 rooms: nether wart room or castle entrance, same size -> candidate
+ *
+ * The server's piece boxes have an inclusive max corner (as in the region files, see
+ * ChunkInspector); whether Bukkit's copy keeps that or adds one is not documented, so a
+ * box matches if its size fits under either reading. A stronghold or
+ * fortress with no recognised room is logged, so a change here cannot silently drop
+ * protection.
+ *
+ * A structure's footprint is computed once (the first time any of its chunks is seen) and
+ * cached per world, so answering for a chunk is a couple of range checks. Safe to call from
+ * worldgen threads.
+ */
+public class StructureIndex {
+
+    private static final int[] PORTAL_ROOM = {11, 8, 16};
+    private static final int[] MONSTER_THRONE = {7, 8, 9};
+    private static final int[] CASTLE_ROOM = {13, 14, 13};
+
+    public enum Match {
+        /** Not part of any protected room. */
+        NONE,
+        /** Inside a room that is always kept. */
+        PROTECTED,
+        /** Inside a room that has to be checked for blocks (fortress wart room or entrance). */
+        CANDIDATE
+    }
+
+    // World -> structure (min corner) -> footprint
+    private final Map<UUID, Map<Long, Footprint>> footprints = new ConcurrentHashMap<>();
+
+    private final Logger logger;
+
+    public StructureIndex(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Best match for (cx, cz) among the given structures of one type. The structures are
+     * the ones the chunk belongs to ({@code Chunk.getStructures()} / {@code LimitedRegion.getStructures}).
+     */
+    public Match match(WorldInfo world, Collection<GeneratedStructure> structures, Structure type, int cx, int cz) {
+        Match best = Match.NONE;
+        for (GeneratedStructure structure : structures) {
+            if (structure.getStructure() != type) {
+                continue;
+            }
+            Match match = footprintOf(world, structure, null).match(cx, cz);
+            if (match == Match.PROTECTED) {
+                return match;
+            }
+            if (match == Match.CANDIDATE) {
+                best = match;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Cached footprint of a structure. {@code onFirstSeen} (may be null) runs once, on the
+     * thread that computed it, so callers can record the footprint before its other chunks load.
+     */
+    public Footprint footprintOf(WorldInfo world, GeneratedStructure structure, Consumer<Footprint> onFirstSeen) {
+        Map<Long, Footprint> worldFootprints =
+                footprints.computeIfAbsent(world.getUID(), uid -> new ConcurrentHashMap<>());
+
+        BoundingBox box = structure.getBoundingBox();
+        long key = ChunkKeyUtil.chunkKey((int) Math.floor(box.getMinX()), (int) Math.floor(box.getMinZ()));
+
+        Footprint footprint = worldFootprints.get(key);
+        if (footprint != null) {
+            return footprint;
+        }
+
+        footprint = build(structure);
+        Footprint existing = worldFootprints.putIfAbsent(key, footprint);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (onFirstSeen != null) {
+            onFirstSeen.accept(footprint);
+        }
+        return footprint;
+    }
+
+    /**
+     * Drop a world's cached footprints (world unload).
+     */
+    public void forget(WorldInfo world) {
+        footprints.remove(world.getUID());
+    }
+
+    private Footprint build(GeneratedStructure structure) {
+        Footprint footprint = new Footprint();
+        Structure type = structure.getStructure();
+        if (type != Structure.STRONGHOLD && type != Structure.FORTRESS) {
+            return footprint;
+        }
+
+        for (StructurePiece piece : structure.getPieces()) {
+            BoundingBox box = piece.getBoundingBox();
+
+            if (type == Structure.STRONGHOLD) {
+                addIfSize(footprint.protectedAreas, box, PORTAL_ROOM);
+            } else {
+                addIfSize(footprint.protectedAreas, box, MONSTER_THRONE);
+                addIfSize(footprint.candidateAreas, box, CASTLE_ROOM);
+            }
+        }
+
+        if (footprint.protectedAreas.isEmpty() && footprint.candidateAreas.isEmpty()) {
+            BoundingBox box = structure.getBoundingBox();
+            logger.warning("[ChunkFall] No " + (type == Structure.STRONGHOLD ? "portal room" : "throne or wart room")
+                    + " recognised in the " + (type == Structure.STRONGHOLD ? "stronghold" : "fortress") + " at "
+                    + (int) Math.floor(box.getMinX()) + "," + (int) Math.floor(box.getMinZ())
+                    + "; it is not protected. Have its room sizes changed?");
+        }
+        return footprint;
+    }
+
+    private static void addIfSize(List<int[]> areas, BoundingBox box, int[] size) {
+        // 0: max corner exclusive, width = size; 1: inclusive, width = size - 1
+        for (int inclusive = 0; inclusive <= 1; inclusive++) {
+            int w = (int) Math.round(box.getWidthX()) + inclusive;
+            int h = (int) Math.round(box.getHeight()) + inclusive;
+            int d = (int) Math.round(box.getWidthZ()) + inclusive;
+
+            boolean sameSize = h == size[1]
+                    && ((w == size[0] && d == size[2]) || (w == size[2] && d == size[0])); // either rotation
+            if (!sameSize) {
+                continue;
+            }
+
+            int minX = (int) Math.floor(box.getMinX());
+            int minZ = (int) Math.floor(box.getMinZ());
+            int maxX = minX + w - 1; // last block inside
+            int maxZ = minZ + d - 1;
+
+            areas.add(new int[]{minX >> 4, minZ >> 4, maxX >> 4, maxZ >> 4});
+            return;
+        }
+    }
+
+    /**
+     * Chunk areas {minCX, minCZ, maxCX, maxCZ} (inclusive) of one structure's rooms.
+     */
+    public static final class Footprint {
+        private final List<int[]> protectedAreas = new ArrayList<>();
+        private final List<int[]> candidateAreas = new ArrayList<>();
+
+        public Match match(int cx, int cz) {
+            if (contains(protectedAreas, cx, cz)) {
+                return Match.PROTECTED;
+            }
+            if (contains(candidateAreas, cx, cz)) {
+                return Match.CANDIDATE;
+            }
+            return Match.NONE;
+        }
+
+        public List<int[]> getProtectedAreas() {
+            return protectedAreas;
+        }
+
+        private static boolean contains(List<int[]> areas, int cx, int cz) {
+            for (int[] area : areas) {
+                if (cx >= area[0] && cx <= area[2] && cz >= area[1] && cz <= area[3]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
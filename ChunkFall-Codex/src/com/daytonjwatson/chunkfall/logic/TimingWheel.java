@@ -0,0 +1,85 @@
+package com.daytonjwatson.chunkfall.logic;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hashed timing wheel keyed by server tick, holding int ids (generator rows). An entry sits
+ * in the slot of its due tick and fires when the wheel reaches that tick; entries due more
+ * than one turn ahead stay in their slot and are passed over until their turn comes.
+ * Advancing costs only the entries of one slot, however many are scheduled, and allocates
+ * nothing once the slots have grown to their working size.
+ *
+ * There is no cancel: callers remember the tick they want and ignore stale firings.
+ * Main thread only.
+ */
+public class TimingWheel {
+
+    private static final int SLOTS = 256;
+    private static final int MASK = SLOTS - 1;
+
+    // Per slot: parallel id / due arrays and a fill count
+    private final int[][] ids = new int[SLOTS][];
+    private final long[][] dues = new long[SLOTS][];
+    private final int[] counts = new int[SLOTS];
+
+    private long tick;
+    private int size;
+
+    public TimingWheel() {
+        for (int i = 0; i < SLOTS; i++) {
+            ids[i] = new int[4];
+            dues[i] = new long[4];
+        }
+    }
+
+    /**
+     * Fire {@code id} at tick {@code due} (the next tick if that has already passed).
+     */
+    public void schedule(int id, long due) {
+        due = Math.max(due, tick + 1);
+        int slot = (int) (due & MASK);
+        int count = counts[slot];
+        if (count == ids[slot].length) {
+            ids[slot] = Arrays.copyOf(ids[slot], count * 2);
+            dues[slot] = Arrays.copyOf(dues[slot], count * 2);
+        }
+        ids[slot][count] = id;
+        dues[slot][count] = due;
+        counts[slot] = count + 1;
+        size++;
+    }
+
+    /**
+     * Move to the next tick and hand every id due on it to {@code fire}.
+     */
+    public void advance(IntConsumer fire) {
+        tick++;
+        int slot = (int) (tick & MASK);
+        // Arrays are read again each time: fire may schedule into this slot and grow them
+        for (int i = 0; i < counts[slot]; ) {
+            if (dues[slot][i] != tick) {
+                i++;
+                continue;
+            }
+            int id = ids[slot][i];
+            // Swap-remove; order within a tick does not matter
+            int last = --counts[slot];
+            ids[slot][i] = ids[slot][last];
+            dues[slot][i] = dues[slot][last];
+            size--;
+            fire.accept(id);
+        }
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Scheduled entries, stale ones included.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,149 @@
+package com.daytonjwatson.chunkfall.tool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A section's {@code block_states}: palette names and properties, where each palette entry
+ * sits in the source buffer (so it can be copied as-is) and the packed index data.
+ */
+final class BlockStates {
+
+    static final int BLOCKS = 4096;
+
+    final List<String> names = new ArrayList<>();
+    final List<Map<String, String>> properties = new ArrayList<>(); // empty map if none
+    final List<int[]> entryRanges = new ArrayList<>(); // {start, end} of each entry's payload
+    long[] data;                                      // null when the palette has one entry
+
+    static BlockStates read(NbtReader in) {
+        BlockStates states = new BlockStates();
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (key.equals("palette") && type == NbtReader.LIST) {
+                int elementType = in.readType();
+                int length = in.readInt();
+                for (int i = 0; i < length; i++) {
+                    int start = in.position();
+                    states.readEntry(in, elementType);
+                    states.entryRanges.add(new int[]{start, in.position()});
+                }
+            } else if (key.equals("data") && type == NbtReader.LONG_ARRAY) {
+                states.data = in.readLongArray();
+            } else {
+                in.skipPayload(type);
+            }
+        }
+        return states;
+    }
+
+    private void readEntry(NbtReader in, int elementType) {
+        String name = "";
+        Map<String, String> props = Map.of();
+        if (elementType != NbtReader.COMPOUND) {
+            in.skipPayload(elementType);
+        } else {
+            int type;
+            while ((type = in.readType()) != NbtReader.END) {
+                String key = in.readString();
+                if (key.equals("Name") && type == NbtReader.STRING) {
+                    name = in.readString();
+                } else if (key.equals("Properties") && type == NbtReader.COMPOUND) {
+                    props = readProperties(in);
+                } else {
+                    in.skipPayload(type);
+                }
+            }
+        }
+        names.add(name);
+        properties.add(props);
+    }
+
+    private static Map<String, String> readProperties(NbtReader in) {
+        Map<String, String> props = new HashMap<>();
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (type == NbtReader.STRING) {
+                props.put(key, in.readString());
+            } else {
+                in.skipPayload(type);
+            }
+        }
+        return props;
+    }
+
+    /**
+     * The Y of the section compound the reader is in, looked up ahead without moving the
+     * reader (0 if it has none).
+     */
+    static int sectionY(NbtReader in) {
+        int start = in.position();
+        int y = 0;
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (key.equals("Y") && type == NbtReader.BYTE) {
+                y = in.readByte();
+            } else {
+                in.skipPayload(type);
+            }
+        }
+        in.position(start);
+        return y;
+    }
+
+    static int bitsFor(int paletteSize) {
+        return Math.max(4, 32 - Integer.numberOfLeadingZeros(paletteSize - 1));
+    }
+
+    /**
+     * Unpack palette indexes into {@code out} (4096 entries, y-z-x order).
+     */
+    void decode(int[] out) {
+        if (data == null || names.size() <= 1) {
+            Arrays.fill(out, 0);
+            return;
+        }
+        int bits = bitsFor(names.size());
+        int perLong = 64 / bits;
+        long mask = (1L << bits) - 1;
+        for (int i = 0; i < BLOCKS; i++) {
+            int word = i / perLong;
+            out[i] = word < data.length ? (int) ((data[word] >>> ((i % perLong) * bits)) & mask) : 0;
+        }
+    }
+
+    static long[] encode(int[] indexes, int paletteSize) {
+        int bits = bitsFor(paletteSize);
+        int perLong = 64 / bits;
+        long[] packed = new long[(BLOCKS + perLong - 1) / perLong];
+        for (int i = 0; i < BLOCKS; i++) {
+            packed[i / perLong] |= (long) indexes[i] << ((i % perLong) * bits);
+        }
+        return packed;
+    }
+
+    /**
+     * True if a palette entry named {@code name} is actually used (palettes may hold stale entries).
+     */
+    boolean uses(String name, int[] scratch) {
+        if (!names.contains(name)) {
+            return false;
+        }
+        if (names.size() == 1) {
+            return true;
+        }
+        decode(scratch);
+        for (int index : scratch) {
+            if (index < names.size() && names.get(index).equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,543 @@
+package com.daytonjwatson.chunkfall.tool;
+
+import com.daytonjwatson.chunkfall.config.PreserveRule;
+import com.daytonjwatson.chunkfall.logic.ChunkLedger;
+import com.daytonjwatson.chunkfall.logic.IslandGrid;
+import com.daytonjwatson.chunkfall.util.ChunkKeyUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Offline converter: voids the region files of a world that was generated without
+ * ChunkFall (or elsewhere), with no server running.
+ *
+ *   java -cp ChunkFall.jar com.daytonjwatson.chunkfall.tool.ChunkFallTool --world world --region-size 8
+ *
+ * Applies the same rules as ChunkProcessor: island chunks are kept, the End portal room
+ * (overworld) and blaze spawner rooms / nether wart chunks (nether) are protected,
+ * everything else becomes void apart from the preserved blocks. Chunks the plugin's
+ * ledger already lists as processed are left alone (players may have built there), and
+ * every chunk handled here is added to the ledger so the plugin won't touch it again.
+ *
+ * Two passes, each parallel over region files:
+ *  1) read structure starts to find protected room footprints anywhere in the world
+ *  2) rewrite each region file; kept chunks are copied without being decompressed
+ *
+ * With --compact, chunks the ledger lists as voided are rewritten in their smallest
+ * form too, and every region file that gets smaller is replaced, which also drops the
+ * free sectors the server leaves behind when chunks shrink.
+ *
+ * Each worker holds one region mapping and one chunk's worth of buffers, so memory
+ * stays bounded no matter how big the world is.
+ */
+public final class ChunkFallTool {
+
+    private static final String PORTAL_ROOM_PIECE = "minecraft:shpr";
+    private static final String MONSTER_THRONE_PIECE = "minecraft:nemt";
+
+    private final Options options;
+    private final IslandGrid grid;
+    private final ChunkLedger ledger;
+    private final Set<Long> protectedChunks = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong voided = new AtomicLong();
+    private final AtomicLong islands = new AtomicLong();
+    private final AtomicLong protectedKept = new AtomicLong();
+    private final AtomicLong alreadyProcessed = new AtomicLong();
+    private final AtomicLong compacted = new AtomicLong();
+    private final AtomicLong notFull = new AtomicLong();
+    private final AtomicLong unsupported = new AtomicLong();
+    private final AtomicLong bytesBefore = new AtomicLong();
+    private final AtomicLong bytesAfter = new AtomicLong();
+
+    private ChunkFallTool(Options options, long seed) {
+        this.options = options;
+        this.grid = new IslandGrid(options.regionSize);
+        this.options.seed = seed;
+        this.ledger = new ChunkLedger(ChunkLedger.directoryFor(options.world), Logger.getLogger("ChunkFall"));
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            long seed = options.seed != null ? options.seed : readSeed(new File(options.world, "level.dat"));
+            new ChunkFallTool(options, seed).run();
+        } catch (Exception e) {
+            System.err.println("ChunkFall tool failed: " + e);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private void run() throws Exception {
+        Path regionDir = options.regionDirectory().toPath();
+        List<Path> regionFiles = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(regionDir, "r.*.*.mca")) {
+            for (Path path : dir) {
+                regionFiles.add(path);
+            }
+        }
+        regionFiles.sort(null);
+
+        System.out.println("ChunkFall: " + regionFiles.size() + " region files in " + regionDir
+                + " (" + (options.nether ? "nether" : "overworld") + ", seed " + options.seed
+                + ", region size " + options.regionSize + ", " + options.threads + " threads"
+                + (options.compact ? ", compacting" : "") + (options.dryRun ? ", dry run" : "") + ")");
+        System.out.println("ChunkFall: preserve rules from " + options.configSource);
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads);
+        try {
+            if (protectsStructures()) {
+                runAll(pool, regionFiles, this::collectProtectedRooms, "Protection");
+                System.out.println("ChunkFall: " + protectedChunks.size() + " chunks in protected rooms.");
+            }
+            runAll(pool, regionFiles, this::rewriteRegion, "Voiding");
+        } finally {
+            pool.shutdown();
+            ledger.close();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("ChunkFall: done in %.1fs. voided=%d islands=%d protected=%d already-processed=%d "
+                        + "compacted=%d not-fully-generated=%d unsupported=%d, region data %d MiB -> %d MiB%n",
+                seconds, voided.get(), islands.get(), protectedKept.get(), alreadyProcessed.get(), compacted.get(),
+                notFull.get(), unsupported.get(), bytesBefore.get() >> 20, bytesAfter.get() >> 20);
+    }
+
+    private boolean protectsStructures() {
+        return options.nether ? options.protectNether : options.protectEndPortal;
+    }
+
+    private interface RegionTask {
+        void run(Path regionFile, Worker worker) throws IOException;
+    }
+
+    private void runAll(ExecutorService pool, List<Path> regionFiles, RegionTask task, String label) throws Exception {
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+        AtomicInteger finished = new AtomicInteger();
+        int total = regionFiles.size();
+        int reportEvery = Math.max(1, total / 20);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (Path path : regionFiles) {
+            futures.add(pool.submit(() -> {
+                try {
+                    task.run(path, workers.get());
+                } catch (IOException | RuntimeException e) {
+                    // One broken region must not stop the rest
+                    System.err.println("ChunkFall: skipped " + path.getFileName() + ": " + e);
+                }
+                int n = finished.incrementAndGet();
+                if (n % reportEvery == 0 || n == total) {
+                    System.out.println("ChunkFall: " + label + " " + n + "/" + total + " regions");
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Pass 1: protected rooms from structure starts
+    // ---------------------------------------------------------------------
+
+    private void collectProtectedRooms(Path path, Worker worker) throws IOException {
+        String wantedPiece = options.nether ? MONSTER_THRONE_PIECE : PORTAL_ROOM_PIECE;
+        int margin = !options.nether && options.endPortalNeighbors ? 1 : 0;
+
+        RegionFile region = RegionFile.open(path);
+        if (region == null) {
+            return;
+        }
+        for (int i = 0; i < RegionFile.CHUNKS; i++) {
+            ByteBuffer raw = region.rawChunk(i);
+            byte[] data = raw != null ? worker.decompress(raw) : null;
+            if (data == null) {
+                continue;
+            }
+
+            ChunkInspector.forEachStructurePiece(data, (id, bb) -> {
+                if (!id.equals(wantedPiece)) {
+                    return;
+                }
+                for (int cx = (bb[0] >> 4) - margin; cx <= (bb[3] >> 4) + margin; cx++) {
+                    for (int cz = (bb[2] >> 4) - margin; cz <= (bb[5] >> 4) + margin; cz++) {
+                        protectedChunks.add(ChunkKeyUtil.chunkKey(cx, cz));
+                        if (!options.dryRun && !options.nether) {
+                            ledger.markProtected(cx, cz);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Pass 2: rewrite
+    // ---------------------------------------------------------------------
+
+    private void rewriteRegion(Path path, Worker worker) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        boolean changed = false;
+
+        RegionFile region = RegionFile.open(path);
+        if (region == null) {
+            return;
+        }
+        bytesBefore.addAndGet(Files.size(path));
+        // Chunks are only added to the ledger once the region is written, so a region that
+        // fails is redone in full on the next run
+        worker.processedCount = 0;
+
+        // A dry run only counts, so it still reports the size the rewrite would have
+        RegionWriter writer = options.dryRun ? RegionWriter.counting() : new RegionWriter(tmp);
+        try {
+            for (int i = 0; i < RegionFile.CHUNKS; i++) {
+                ByteBuffer raw = region.rawChunk(i);
+                if (raw == null) {
+                    continue;
+                }
+
+                int cx = region.chunkX(i);
+                int cz = region.chunkZ(i);
+                byte[] voidedChunk = processChunk(raw, cx, cz, worker);
+
+                if (voidedChunk != null) {
+                    writer.writeZlib(i, voidedChunk, worker.compressedLength, region.timestamp(i));
+                    changed = true;
+                } else {
+                    writer.writeRaw(i, raw, region.timestamp(i));
+                }
+            }
+        } finally {
+            writer.close();
+            // Compaction replaces any region the rewrite made smaller: the writer
+            // packs chunks back to back, so this also drops freed sectors
+            changed |= options.compact && writer.sizeBytes() < Files.size(path);
+            bytesAfter.addAndGet(changed ? writer.sizeBytes() : Files.size(path));
+        }
+
+        if (options.dryRun) {
+            return;
+        }
+        if (changed) {
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } else {
+            Files.deleteIfExists(tmp);
+        }
+
+        for (int i = 0; i < worker.processedCount; i++) {
+            long key = worker.processed[i];
+            ledger.markProcessed(ChunkKeyUtil.keyX(key), ChunkKeyUtil.keyZ(key));
+        }
+    }
+
+    /**
+     * Decide one chunk. Returns the compressed void chunk (in the worker's buffer),
+     * or null if the chunk is kept as it is.
+     */
+    private byte[] processChunk(ByteBuffer raw, int cx, int cz, Worker worker) throws IOException {
+        if (ledger.isProcessed(cx, cz)) {
+            alreadyProcessed.incrementAndGet();
+            return options.compact ? compactChunk(raw, worker) : null;
+        }
+
+        if (protectedChunks.contains(ChunkKeyUtil.chunkKey(cx, cz)) || ledger.isProtected(cx, cz)) {
+            protectedKept.incrementAndGet();
+            worker.markProcessed(cx, cz);
+            return null;
+        }
+
+        if (grid.isIslandChunk(options.seed, cx, cz)) {
+            islands.incrementAndGet();
+            worker.markProcessed(cx, cz);
+            return null;
+        }
+
+        byte[] data = worker.decompress(raw);
+        if (data == null) {
+            unsupported.incrementAndGet();
+            return null;
+        }
+
+        boolean checkFortress = options.nether && options.protectNether;
+        ChunkInspector.ChunkInfo info = ChunkInspector.inspect(data, checkFortress, worker.indexes);
+        if (!info.full) {
+            // Still generating: the plugin voids it when it finishes
+            notFull.incrementAndGet();
+            return null;
+        }
+
+        if (checkFortress && (info.netherWart || info.blazeSpawner)) {
+            protectedKept.incrementAndGet();
+            worker.markProcessed(cx, cz);
+            return null;
+        }
+
+        worker.out.reset();
+        worker.voider.voidChunk(data, worker.out);
+        voided.incrementAndGet();
+        worker.markProcessed(cx, cz);
+        return worker.compress();
+    }
+
+    /**
+     * Rewrite a chunk the plugin voided earlier in its smallest form. Chunks holding
+     * anything but air and preserved blocks (islands, protected rooms, player builds)
+     * are left alone.
+     */
+    private byte[] compactChunk(ByteBuffer raw, Worker worker) throws IOException {
+        byte[] data = worker.decompress(raw);
+        if (data == null || !ChunkInspector.isVoid(data, options.preserve)) {
+            return null;
+        }
+
+        worker.out.reset();
+        worker.voider.voidChunk(data, worker.out);
+        compacted.incrementAndGet();
+        return worker.compress();
+    }
+
+    /**
+     * Per-thread buffers, reused for every chunk.
+     */
+    private final class Worker {
+        final Inflater inflater = new Inflater();
+        final Deflater deflater = new Deflater(options.compact ? Deflater.BEST_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+        final NbtWriter out = new NbtWriter(64 * 1024);
+        final ChunkVoider voider = new ChunkVoider(options.preserve);
+        final int[] indexes = new int[BlockStates.BLOCKS];
+        byte[] chunk = new byte[256 * 1024];
+        byte[] compressed = new byte[64 * 1024];
+        int compressedLength;
+        // Chunk keys of the current region to add to the ledger once it is written
+        final long[] processed = new long[RegionFile.CHUNKS];
+        int processedCount;
+
+        void markProcessed(int cx, int cz) {
+            processed[processedCount++] = ChunkKeyUtil.chunkKey(cx, cz);
+        }
+
+        byte[] decompress(ByteBuffer raw) throws IOException {
+            RegionFile.Decompressed result = RegionFile.decompress(raw, inflater, chunk);
+            if (result == null) {
+                return null;
+            }
+            chunk = result.data;
+            // Readers stop at the root's END tag, so trailing buffer content is never read
+            return chunk;
+        }
+
+        byte[] compress() {
+            deflater.reset();
+            deflater.setInput(out.buffer(), 0, out.size());
+            deflater.finish();
+            int len = 0;
+            while (!deflater.finished()) {
+                if (len == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                len += deflater.deflate(compressed, len, compressed.length - len);
+            }
+            compressedLength = len;
+            return compressed;
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // level.dat
+    // ---------------------------------------------------------------------
+
+    /**
+     * World seed from level.dat: Data.WorldGenSettings.seed (1.16+) or Data.RandomSeed.
+     */
+    static long readSeed(File levelDat) throws IOException {
+        byte[] data;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(levelDat.toPath()))) {
+            data = in.readAllBytes();
+        }
+
+        NbtReader in = new NbtReader(data, 0);
+        in.readRoot();
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (!key.equals("Data") || type != NbtReader.COMPOUND) {
+                in.skipPayload(type);
+                continue;
+            }
+            Long seed = null;
+            int t;
+            while ((t = in.readType()) != NbtReader.END) {
+                String k = in.readString();
+                if (k.equals("RandomSeed") && t == NbtReader.LONG) {
+                    seed = in.readLong();
+                } else if (k.equals("WorldGenSettings") && t == NbtReader.COMPOUND) {
+                    int s;
+                    while ((s = in.readType()) != NbtReader.END) {
+                        String sk = in.readString();
+                        if (sk.equals("seed") && s == NbtReader.LONG) {
+                            seed = in.readLong();
+                        } else {
+                            in.skipPayload(s);
+                        }
+                    }
+                } else {
+                    in.skipPayload(t);
+                }
+            }
+            if (seed != null) {
+                return seed;
+            }
+        }
+        throw new IOException("No seed in " + levelDat + ", pass --seed");
+    }
+
+    // ---------------------------------------------------------------------
+    // Command line
+    // ---------------------------------------------------------------------
+
+    static final class Options {
+        static final String USAGE = String.join("\n",
+                "Usage: java -cp ChunkFall.jar com.daytonjwatson.chunkfall.tool.ChunkFallTool --world <folder> --region-size <chunks> [options]",
+                "  --world <folder>             world folder (e.g. world, world_nether); stop the server first",
+                "  --region-size <chunks>       region-size-chunks from config.yml",
+                "  --seed <seed>                world seed (default: read from level.dat)",
+                "  --threads <n>                worker threads (default: all cores)",
+                "  --no-end-portal-protection   do not keep the End portal room",
+                "  --end-portal-neighbors       also keep chunks bordering the portal room",
+                "  --no-nether-protection       do not keep blaze spawner rooms / nether wart",
+                "  --config <file>              the plugin's config.yml, whose preserve.<dimension> rules",
+                "                               are applied (default: plugins/ChunkFall/config.yml next to",
+                "                               the world, else the config.yml in the jar). Rules using",
+                "                               block tags (#...) are rejected: list their blocks instead",
+                "  --compact                    also shrink chunks voided earlier and defragment region files",
+                "  --dry-run                    report only, leave region files untouched");
+
+        File world;
+        int regionSize;
+        Long seed;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean nether;
+        boolean protectEndPortal = true;
+        boolean endPortalNeighbors;
+        boolean protectNether = true;
+        File config;
+        String configSource;
+        PreserveMatcher preserve;
+        boolean compact;
+        boolean dryRun;
+
+        File regionDirectory() {
+            return nether ? new File(new File(world, "DIM-1"), "region") : new File(world, "region");
+        }
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--world" -> o.world = new File(value(args, ++i));
+                    case "--region-size" -> o.regionSize = Integer.parseInt(value(args, ++i));
+                    case "--seed" -> o.seed = Long.parseLong(value(args, ++i));
+                    case "--threads" -> o.threads = Math.max(1, Integer.parseInt(value(args, ++i)));
+                    case "--no-end-portal-protection" -> o.protectEndPortal = false;
+                    case "--end-portal-neighbors" -> o.endPortalNeighbors = true;
+                    case "--no-nether-protection" -> o.protectNether = false;
+                    case "--config" -> o.config = new File(value(args, ++i));
+                    case "--compact" -> o.compact = true;
+                    case "--dry-run" -> o.dryRun = true;
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+
+            if (o.world == null || !o.world.isDirectory()) {
+                throw new IllegalArgumentException("--world must point to a world folder");
+            }
+            if (o.regionSize <= 0) {
+                throw new IllegalArgumentException("--region-size is required");
+            }
+
+            // Bukkit keeps the nether in <name>_nether/DIM-1
+            o.nether = !new File(o.world, "region").isDirectory()
+                    && new File(new File(o.world, "DIM-1"), "region").isDirectory();
+            o.preserve = PreserveMatcher.compile(o.readPreserveRules());
+            return o;
+        }
+
+        private List<PreserveRule> readPreserveRules() {
+            File file = config;
+            if (file == null) {
+                File serverDir = world.getAbsoluteFile().getParentFile();
+                File installed = new File(serverDir, "plugins" + File.separator + "ChunkFall" + File.separator + "config.yml");
+                file = installed.isFile() ? installed : null;
+            }
+
+            try {
+                if (file != null) {
+                    configSource = file.getPath();
+                    try (Reader reader = Files.newBufferedReader(file.toPath())) {
+                        return PreserveConfig.read(reader, nether);
+                    }
+                }
+                InputStream bundled = ChunkFallTool.class.getResourceAsStream("/config.yml");
+                if (bundled == null) {
+                    throw new IllegalArgumentException("No config.yml found, pass --config");
+                }
+                configSource = "the default config.yml";
+                try (Reader reader = new InputStreamReader(bundled, StandardCharsets.UTF_8)) {
+                    return PreserveConfig.read(reader, nether);
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not read " + configSource + ": " + e.getMessage());
+            }
+        }
+
+        private static String value(String[] args, int i) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+            }
+            return args[i];
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.daytonjwatson.chunkfall.tool;
+
+import java.util.Set;
+
+/**
+ * Reads what the voiding rules need from a decompressed chunk, skipping everything else.
+ */
+final class ChunkInspector {
+
+    static final String NETHER_WART = "minecraft:nether_wart";
+    static final String SPAWNER = "minecraft:mob_spawner";
+    static final String BLAZE = "minecraft:blaze";
+    static final Set<String> AIR = Set.of("minecraft:air", "minecraft:cave_air", "minecraft:void_air");
+
+    private ChunkInspector() {
+    }
+
+    interface PieceConsumer {
+        /**
+         * @param bb inclusive block box {minX, minY, minZ, maxX, maxY, maxZ}
+         */
+        void accept(String pieceId, int[] bb);
+    }
+
+    /**
+     * Structure pieces of every structure that starts in this chunk.
+     */
+    static void forEachStructurePiece(byte[] data, PieceConsumer consumer) {
+        NbtReader in = new NbtReader(data, 0);
+        in.readRoot();
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (!key.equals("structures") || type != NbtReader.COMPOUND) {
+                in.skipPayload(type);
+                continue;
+            }
+            int t;
+            while ((t = in.readType()) != NbtReader.END) {
+                String k = in.readString();
+                if (!k.equals("starts") || t != NbtReader.COMPOUND) {
+                    in.skipPayload(t);
+                    continue;
+                }
+                int st;
+                while ((st = in.readType()) != NbtReader.END) {
+                    in.skipString(); // structure id
+                    if (st != NbtReader.COMPOUND) {
+                        in.skipPayload(st);
+                        continue;
+                    }
+                    readStart(in, consumer);
+                }
+            }
+        }
+    }
+
+    private static void readStart(NbtReader in, PieceConsumer consumer) {
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (!key.equals("Children") || type != NbtReader.LIST) {
+                in.skipPayload(type);
+                continue;
+            }
+            int elementType = in.readType();
+            int length = in.readInt();
+            for (int i = 0; i < length; i++) {
+                if (elementType != NbtReader.COMPOUND) {
+                    in.skipPayload(elementType);
+                    continue;
+                }
+                String id = null;
+                int[] bb = null;
+                int t;
+                while ((t = in.readType()) != NbtReader.END) {
+                    String k = in.readString();
+                    if (k.equals("id") && t == NbtReader.STRING) {
+                        id = in.readString();
+                    } else if (k.equals("BB") && t == NbtReader.INT_ARRAY) {
+                        bb = in.readIntArray();
+                    } else {
+                        in.skipPayload(t);
+                    }
+                }
+                if (id != null && bb != null && bb.length == 6) {
+                    consumer.accept(id, bb);
+                }
+            }
+        }
+    }
+
+    /**
+     * Generation status plus, if asked, whether the chunk holds nether wart or a blaze spawner.
+     */
+    static ChunkInfo inspect(byte[] data, boolean lookForFortressEssentials, int[] scratch) {
+        ChunkInfo info = new ChunkInfo();
+        NbtReader in = new NbtReader(data, 0);
+        in.readRoot();
+
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (key.equals("Status") && type == NbtReader.STRING) {
+                String status = in.readString();
+                info.full = status.equals("minecraft:full") || status.equals("full");
+            } else if (lookForFortressEssentials && key.equals("sections") && type == NbtReader.LIST) {
+                readSections(in, info, scratch);
+            } else if (lookForFortressEssentials && key.equals("block_entities") && type == NbtReader.LIST) {
+                readBlockEntities(in, info);
+            } else {
+                in.skipPayload(type);
+            }
+        }
+        return info;
+    }
+
+    private static void readSections(NbtReader in, ChunkInfo info, int[] scratch) {
+        int elementType = in.readType();
+        int length = in.readInt();
+        for (int i = 0; i < length; i++) {
+            if (elementType != NbtReader.COMPOUND || info.netherWart) {
+                in.skipPayload(elementType);
+                continue;
+            }
+            int type;
+            while ((type = in.readType()) != NbtReader.END) {
+                String key = in.readString();
+                if (key.equals("block_states") && type == NbtReader.COMPOUND) {
+                    if (BlockStates.read(in).uses(NETHER_WART, scratch)) {
+                        info.netherWart = true;
+                    }
+                } else {
+                    in.skipPayload(type);
+                }
+            }
+        }
+    }
+
+    private static void readBlockEntities(NbtReader in, ChunkInfo info) {
+        int elementType = in.readType();
+        int length = in.readInt();
+        for (int i = 0; i < length; i++) {
+            if (elementType != NbtReader.COMPOUND) {
+                in.skipPayload(elementType);
+                continue;
+            }
+            String id = null;
+            String spawns = null;
+            int type;
+            while ((type = in.readType()) != NbtReader.END) {
+                String key = in.readString();
+                if (key.equals("id") && type == NbtReader.STRING) {
+                    id = in.readString();
+                } else if (key.equals("SpawnData") && type == NbtReader.COMPOUND) {
+                    spawns = readSpawnedEntityId(in);
+                } else {
+                    in.skipPayload(type);
+                }
+            }
+            if (SPAWNER.equals(id) && BLAZE.equals(spawns)) {
+                info.blazeSpawner = true;
+            }
+        }
+    }
+
+    // SpawnData: {entity: {id: "minecraft:blaze", ...}, ...}
+    private static String readSpawnedEntityId(NbtReader in) {
+        String id = null;
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (key.equals("entity") && type == NbtReader.COMPOUND) {
+                int t;
+                while ((t = in.readType()) != NbtReader.END) {
+                    String k = in.readString();
+                    if (k.equals("id") && t == NbtReader.STRING) {
+                        id = in.readString();
+                    } else {
+                        in.skipPayload(t);
+                    }
+                }
+            } else {
+                in.skipPayload(type);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * True if every section holds nothing but air and blocks {@code preserve} keeps, judged
+     * from the palettes alone. A stale palette entry, or one kept in only part of its
+     * section's height, only makes this answer false.
+     */
+    static boolean isVoid(byte[] data, PreserveMatcher preserve) {
+        NbtReader in = new NbtReader(data, 0);
+        in.readRoot();
+
+        boolean isVoid = true;
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (!isVoid || !key.equals("sections") || type != NbtReader.LIST) {
+                in.skipPayload(type);
+                continue;
+            }
+            int elementType = in.readType();
+            int length = in.readInt();
+            for (int i = 0; i < length; i++) {
+                if (elementType != NbtReader.COMPOUND || !isVoid) {
+                    in.skipPayload(elementType);
+                    continue;
+                }
+                int minY = BlockStates.sectionY(in) << 4;
+                int t;
+                while ((t = in.readType()) != NbtReader.END) {
+                    String k = in.readString();
+                    if (isVoid && k.equals("block_states") && t == NbtReader.COMPOUND) {
+                        BlockStates states = BlockStates.read(in);
+                        for (int e = 0; e < states.names.size(); e++) {
+                            String name = states.names.get(e);
+                            if (!AIR.contains(name) && !PreserveMatcher.covers(
+                                    preserve.bandsFor(name, states.properties.get(e)), minY, minY + 15)) {
+                                isVoid = false;
+                                break;
+                            }
+                        }
+                    } else {
+                        in.skipPayload(t);
+                    }
+                }
+            }
+        }
+        return isVoid;
+    }
+
+    static final class ChunkInfo {
+        boolean full;
+        boolean netherWart;
+        boolean blazeSpawner;
+    }
+}
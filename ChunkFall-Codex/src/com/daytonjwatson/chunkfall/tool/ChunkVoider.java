@@ -0,0 +1,262 @@
+package com.daytonjwatson.chunkfall.tool;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rewrites a decompressed chunk as a void chunk, streaming it from reader to writer.
+ *
+ * Same result as ChunkProcessor.makeChunkVoid: every block becomes air except the
+ * preserved ones. Block entities and scheduled ticks of cleared blocks go with them, those
+ * of preserved blocks (a kept spawner or chest) stay. Heightmaps,
+ * light and generation leftovers are dropped and the chunk is flagged unlit, so the
+ * server recomputes them when it loads the chunk. Air sections are written as a
+ * single-entry palette without data, the smallest form the format allows.
+ *
+ * Everything else (biomes, structures, status, ...) is copied byte for byte. Structure
+ * starts and references stay: /locate, eyes of ender and fortress mob spawns on the
+ * preserved bricks read them, and they are a few bytes per chunk.
+ */
+final class ChunkVoider {
+
+    private static final String AIR = "minecraft:air";
+
+    // Root lists whose entries belong to a block position
+    private static final String[] POSITIONED = {"block_entities", "block_ticks", "fluid_ticks"};
+
+    private final PreserveMatcher preserve;
+    private final int[] indexes = new int[BlockStates.BLOCKS];
+
+    // Preserved blocks of the chunk being voided: section Y -> 4096-bit set (y-z-x order)
+    private final Map<Integer, long[]> keptBlocks = new HashMap<>();
+    // Where each positioned list's payload starts in the source (-1 if absent), and its type
+    private final int[] positionedAt = new int[POSITIONED.length];
+    private final int[] positionedType = new int[POSITIONED.length];
+
+    /**
+     * @param preserve the dimension's preserve rules
+     */
+    ChunkVoider(PreserveMatcher preserve) {
+        this.preserve = preserve;
+    }
+
+    void voidChunk(byte[] data, NbtWriter out) {
+        NbtReader in = new NbtReader(data, 0);
+        in.readRoot();
+        out.writeRoot();
+        keptBlocks.clear();
+        Arrays.fill(positionedAt, -1);
+
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            switch (key) {
+                case "sections" -> {
+                    if (type != NbtReader.LIST) {
+                        out.writeTag(type, key);
+                        out.copyPayload(in, type);
+                        break;
+                    }
+                    int elementType = in.readType();
+                    int length = in.readInt();
+                    out.writeTag(NbtReader.LIST, key);
+                    out.writeType(elementType);
+                    out.writeInt(length);
+                    for (int i = 0; i < length; i++) {
+                        if (elementType == NbtReader.COMPOUND) {
+                            voidSection(in, out);
+                        } else {
+                            out.copyPayload(in, elementType);
+                        }
+                    }
+                }
+                // Filtered by the blocks kept, so written once all sections are done
+                case "block_entities" -> defer(0, type, in);
+                case "block_ticks" -> defer(1, type, in);
+                case "fluid_ticks" -> defer(2, type, in);
+                // Only used while generating or upgrading, meaningless for a void chunk
+                case "Heightmaps", "PostProcessing", "blending_data", "UpgradeData", "CarvingMasks", "Lights" ->
+                        in.skipPayload(type);
+                case "isLightOn" -> {
+                    in.skipPayload(type);
+                    out.writeTag(NbtReader.BYTE, key);
+                    out.writeByte((byte) 0);
+                }
+                default -> {
+                    out.writeTag(type, key);
+                    out.copyPayload(in, type);
+                }
+            }
+        }
+
+        for (int i = 0; i < POSITIONED.length; i++) {
+            if (positionedAt[i] >= 0) {
+                in.position(positionedAt[i]);
+                out.writeTag(NbtReader.LIST, POSITIONED[i]);
+                writeKeptEntries(in, positionedType[i], out);
+            }
+        }
+        out.writeType(NbtReader.END);
+    }
+
+    private void defer(int list, int type, NbtReader in) {
+        positionedAt[list] = in.position();
+        positionedType[list] = type;
+        in.skipPayload(type);
+    }
+
+    // Copy the entries (block entities or ticks) that sit on a preserved block
+    private void writeKeptEntries(NbtReader in, int type, NbtWriter out) {
+        if (type != NbtReader.LIST || keptBlocks.isEmpty()) {
+            out.writeEmptyList();
+            return;
+        }
+        int elementType = in.readType();
+        int length = in.readInt();
+        if (elementType != NbtReader.COMPOUND) {
+            out.writeEmptyList();
+            return;
+        }
+
+        int start = in.position();
+        int kept = 0;
+        for (int i = 0; i < length; i++) {
+            if (isOnKeptBlock(in)) {
+                kept++;
+            }
+        }
+        if (kept == 0) {
+            out.writeEmptyList();
+            return;
+        }
+
+        out.writeType(NbtReader.COMPOUND);
+        out.writeInt(kept);
+        in.position(start);
+        for (int i = 0; i < length; i++) {
+            int entry = in.position();
+            if (isOnKeptBlock(in)) {
+                out.writeRaw(in.buffer(), entry, in.position() - entry);
+            }
+        }
+    }
+
+    // Reads one entry compound
+    private boolean isOnKeptBlock(NbtReader in) {
+        int x = 0;
+        int y = Integer.MIN_VALUE;
+        int z = 0;
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (type == NbtReader.INT && (key.equals("x") || key.equals("y") || key.equals("z"))) {
+                int v = in.readInt();
+                switch (key) {
+                    case "x" -> x = v;
+                    case "y" -> y = v;
+                    default -> z = v;
+                }
+            } else {
+                in.skipPayload(type);
+            }
+        }
+        long[] bits = y != Integer.MIN_VALUE ? keptBlocks.get(y >> 4) : null;
+        int index = (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+        return bits != null && (bits[index >>> 6] & 1L << index) != 0;
+    }
+
+    private void voidSection(NbtReader in, NbtWriter out) {
+        int sectionY = BlockStates.sectionY(in);
+        int type;
+        while ((type = in.readType()) != NbtReader.END) {
+            String key = in.readString();
+            if (key.equals("block_states") && type == NbtReader.COMPOUND) {
+                out.writeTag(NbtReader.COMPOUND, key);
+                long[] kept = writeVoidBlockStates(BlockStates.read(in), in.buffer(), out, sectionY << 4);
+                if (kept != null) {
+                    keptBlocks.put(sectionY, kept);
+                }
+            } else if (key.equals("BlockLight") || key.equals("SkyLight")) {
+                in.skipPayload(type);
+            } else {
+                out.writeTag(type, key);
+                out.copyPayload(in, type);
+            }
+        }
+        out.writeType(NbtReader.END);
+    }
+
+    /**
+     * @return the preserved blocks as a 4096-bit set, or null if there are none
+     */
+    private long[] writeVoidBlockStates(BlockStates states, byte[] source, NbtWriter out, int minY) {
+        int maxY = minY + 15;
+
+        // Old palette index -> new palette index (0 = air); entries kept only in part of
+        // the section's height are checked block by block against their Y bands
+        int[] remap = new int[states.names.size()];
+        int[][] bands = new int[remap.length][];
+        boolean partial = false;
+        int newSize = 1;
+        for (int i = 0; i < remap.length; i++) {
+            int[] entryBands = preserve.bandsFor(states.names.get(i), states.properties.get(i));
+            if (PreserveMatcher.overlaps(entryBands, minY, maxY)) {
+                remap[i] = newSize++;
+                bands[i] = entryBands;
+                partial |= !PreserveMatcher.covers(entryBands, minY, maxY);
+            }
+        }
+
+        boolean anyPreserved = false;
+        if (newSize > 1) {
+            states.decode(indexes);
+            for (int i = 0; i < BlockStates.BLOCKS; i++) {
+                int old = indexes[i];
+                int kept = old < remap.length ? remap[old] : 0;
+                if (kept != 0 && partial && !PreserveMatcher.contains(bands[old], minY + (i >>> 8))) {
+                    kept = 0;
+                }
+                indexes[i] = kept;
+                anyPreserved |= kept != 0;
+            }
+        }
+
+        out.writeTag(NbtReader.LIST, "palette");
+        out.writeType(NbtReader.COMPOUND);
+        if (!anyPreserved) {
+            // Single-entry palette, no data: the whole section is air
+            out.writeInt(1);
+            writeAirEntry(out);
+            out.writeType(NbtReader.END);
+            return null;
+        }
+
+        out.writeInt(newSize);
+        writeAirEntry(out);
+        for (int i = 0; i < remap.length; i++) {
+            if (remap[i] != 0) {
+                int[] range = states.entryRanges.get(i);
+                out.writeRaw(source, range[0], range[1] - range[0]);
+            }
+        }
+
+        out.writeTag(NbtReader.LONG_ARRAY, "data");
+        out.writeLongArray(BlockStates.encode(indexes, newSize));
+        out.writeType(NbtReader.END);
+
+        long[] kept = new long[BlockStates.BLOCKS / 64];
+        for (int i = 0; i < BlockStates.BLOCKS; i++) {
+            if (indexes[i] != 0) {
+                kept[i >>> 6] |= 1L << i;
+            }
+        }
+        return kept;
+    }
+
+    private static void writeAirEntry(NbtWriter out) {
+        out.writeTag(NbtReader.STRING, "Name");
+        out.writeString(AIR);
+        out.writeType(NbtReader.END);
+    }
+}
@@ -0,0 +1,171 @@
+package com.daytonjwatson.chunkfall.tool;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Forward-only NBT reader over a decompressed chunk.
+ *
+ * Nothing is materialised unless asked for: callers walk a compound key by key and
+ * skip (or copy through {@link NbtWriter#copyPayload}) whatever they don't need, so
+ * reading a chunk allocates little more than the key names.
+ */
+final class NbtReader {
+
+    static final int END = 0;
+    static final int BYTE = 1;
+    static final int SHORT = 2;
+    static final int INT = 3;
+    static final int LONG = 4;
+    static final int FLOAT = 5;
+    static final int DOUBLE = 6;
+    static final int BYTE_ARRAY = 7;
+    static final int STRING = 8;
+    static final int LIST = 9;
+    static final int COMPOUND = 10;
+    static final int INT_ARRAY = 11;
+    static final int LONG_ARRAY = 12;
+
+    private final byte[] buf;
+    private int pos;
+
+    NbtReader(byte[] buf, int offset) {
+        this.buf = buf;
+        this.pos = offset;
+    }
+
+    byte[] buffer() {
+        return buf;
+    }
+
+    int position() {
+        return pos;
+    }
+
+    void position(int pos) {
+        this.pos = pos;
+    }
+
+    /**
+     * Read the root tag header and return its type (always a compound for chunks).
+     */
+    int readRoot() {
+        int type = readType();
+        skipString(); // root name, empty
+        return type;
+    }
+
+    int readType() {
+        return buf[pos++] & 0xff;
+    }
+
+    byte readByte() {
+        return buf[pos++];
+    }
+
+    short readShort() {
+        int v = ((buf[pos] & 0xff) << 8) | (buf[pos + 1] & 0xff);
+        pos += 2;
+        return (short) v;
+    }
+
+    int readInt() {
+        int v = ((buf[pos] & 0xff) << 24) | ((buf[pos + 1] & 0xff) << 16)
+                | ((buf[pos + 2] & 0xff) << 8) | (buf[pos + 3] & 0xff);
+        pos += 4;
+        return v;
+    }
+
+    long readLong() {
+        return ((long) readInt() << 32) | (readInt() & 0xffffffffL);
+    }
+
+    String readString() {
+        int len = readShort() & 0xffff;
+        String s = decodeModifiedUtf8(buf, pos, len);
+        pos += len;
+        return s;
+    }
+
+    void skipString() {
+        // Read the length first: "pos += readShort()" would add it to the old position
+        int len = readShort() & 0xffff;
+        pos += len;
+    }
+
+    int[] readIntArray() {
+        int[] v = new int[readInt()];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = readInt();
+        }
+        return v;
+    }
+
+    long[] readLongArray() {
+        long[] v = new long[readInt()];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = readLong();
+        }
+        return v;
+    }
+
+    void skipPayload(int type) {
+        switch (type) {
+            case BYTE -> pos += 1;
+            case SHORT -> pos += 2;
+            case INT, FLOAT -> pos += 4;
+            case LONG, DOUBLE -> pos += 8;
+            case BYTE_ARRAY -> skip(readInt());
+            case STRING -> skipString();
+            case INT_ARRAY -> skip(readInt() * 4);
+            case LONG_ARRAY -> skip(readInt() * 8);
+            case LIST -> {
+                int elementType = readType();
+                int length = readInt();
+                for (int i = 0; i < length; i++) {
+                    skipPayload(elementType);
+                }
+            }
+            case COMPOUND -> {
+                int t;
+                while ((t = readType()) != END) {
+                    skipString();
+                    skipPayload(t);
+                }
+            }
+            case END -> {
+            }
+            default -> throw new IllegalStateException("Unknown NBT tag type " + type + " at " + pos);
+        }
+    }
+
+    private void skip(int bytes) {
+        pos += bytes;
+    }
+
+    static String decodeModifiedUtf8(byte[] b, int off, int len) {
+        // Keys and block names are plain ASCII; only fall back to full decoding when needed
+        for (int i = 0; i < len; i++) {
+            if (b[off + i] < 0) {
+                return decodeSlow(b, off, len);
+            }
+        }
+        return new String(b, off, len, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String decodeSlow(byte[] b, int off, int len) {
+        StringBuilder sb = new StringBuilder(len);
+        int i = off;
+        int end = off + len;
+        while (i < end) {
+            int c = b[i++] & 0xff;
+            if (c < 0x80) {
+                sb.append((char) c);
+            } else if ((c & 0xe0) == 0xc0) {
+                sb.append((char) (((c & 0x1f) << 6) | (b[i++] & 0x3f)));
+            } else {
+                sb.append((char) (((c & 0x0f) << 12) | ((b[i++] & 0x3f) << 6) | (b[i++] & 0x3f)));
+            }
+        }
+        return sb.toString();
+    }
+}
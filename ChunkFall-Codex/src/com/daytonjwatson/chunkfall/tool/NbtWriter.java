@@ -0,0 +1,127 @@
+package com.daytonjwatson.chunkfall.tool;
+
+import java.util.Arrays;
+
+/**
+ * Growable NBT output buffer, reused per worker thread.
+ */
+final class NbtWriter {
+
+    private byte[] buf;
+    private int size;
+
+    NbtWriter(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    byte[] buffer() {
+        return buf;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void writeRoot() {
+        writeType(NbtReader.COMPOUND);
+        writeString("");
+    }
+
+    /**
+     * Tag header: type and name.
+     */
+    void writeTag(int type, String name) {
+        writeType(type);
+        writeString(name);
+    }
+
+    void writeType(int type) {
+        ensure(1);
+        buf[size++] = (byte) type;
+    }
+
+    void writeByte(byte v) {
+        ensure(1);
+        buf[size++] = v;
+    }
+
+    void writeShort(int v) {
+        ensure(2);
+        buf[size++] = (byte) (v >>> 8);
+        buf[size++] = (byte) v;
+    }
+
+    void writeInt(int v) {
+        ensure(4);
+        buf[size++] = (byte) (v >>> 24);
+        buf[size++] = (byte) (v >>> 16);
+        buf[size++] = (byte) (v >>> 8);
+        buf[size++] = (byte) v;
+    }
+
+    void writeLong(long v) {
+        writeInt((int) (v >>> 32));
+        writeInt((int) v);
+    }
+
+    void writeString(String s) {
+        // Modified UTF-8, as DataOutput.writeUTF
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            len += (c != 0 && c < 0x80) ? 1 : (c < 0x800 ? 2 : 3);
+        }
+        writeShort(len);
+        ensure(len);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != 0 && c < 0x80) {
+                buf[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[size++] = (byte) (0xc0 | (c >> 6));
+                buf[size++] = (byte) (0x80 | (c & 0x3f));
+            } else {
+                buf[size++] = (byte) (0xe0 | (c >> 12));
+                buf[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[size++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    void writeLongArray(long[] v) {
+        writeInt(v.length);
+        for (long l : v) {
+            writeLong(l);
+        }
+    }
+
+    void writeEmptyList() {
+        writeType(NbtReader.END);
+        writeInt(0);
+    }
+
+    void writeRaw(byte[] src, int off, int len) {
+        ensure(len);
+        System.arraycopy(src, off, buf, size, len);
+        size += len;
+    }
+
+    /**
+     * Copy the next payload of {@code type} from the reader unchanged.
+     */
+    void copyPayload(NbtReader in, int type) {
+        int start = in.position();
+        in.skipPayload(type);
+        writeRaw(in.buffer(), start, in.position() - start);
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.daytonjwatson.chunkfall.tool;
+
+import com.daytonjwatson.chunkfall.config.PreserveRule;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads {@code preserve.<dimension>} from the plugin's config.yml, so the tool keeps the
+ * same blocks as the plugin without a copy of its rules.
+ *
+ * The tool runs without a server, so there is no YAML library on its class path. This reads
+ * the block style config.yml is written in: mappings nested by indentation, "- item" and
+ * "[a, b]" lists, plain or quoted scalars and comments. Anything else reads as absent.
+ */
+final class PreserveConfig {
+
+    private PreserveConfig() {
+    }
+
+    /**
+     * The dimension's rules, read the way ChunkFallConfig reads them.
+     */
+    static List<PreserveRule> read(Reader source, boolean nether) throws IOException {
+        Object preserve = parse(source).get("preserve");
+        if (!(preserve instanceof Map<?, ?> dimensions)) {
+            // Same fallback as the plugin for configs without a preserve section
+            return nether ? List.of(PreserveRule.NETHER_FALLBACK) : List.of();
+        }
+
+        List<PreserveRule> rules = new ArrayList<>();
+        if (dimensions.get(nether ? "nether" : "overworld") instanceof Map<?, ?> byName) {
+            for (Map.Entry<?, ?> entry : byName.entrySet()) {
+                if (!(entry.getValue() instanceof Map<?, ?> rule)) {
+                    continue;
+                }
+                rules.add(new PreserveRule((String) entry.getKey(),
+                        stringList(rule.get("blocks")),
+                        rule.get("state") instanceof String state ? state : null,
+                        intOr(rule.get("min-y"), Integer.MIN_VALUE),
+                        intOr(rule.get("max-y"), Integer.MAX_VALUE)));
+            }
+        }
+        return rules;
+    }
+
+    private static List<String> stringList(Object value) {
+        List<String> list = new ArrayList<>();
+        if (value instanceof List<?> items) {
+            for (Object item : items) {
+                list.add((String) item);
+            }
+        }
+        return list;
+    }
+
+    private static int intOr(Object value, int fallback) {
+        if (value instanceof String s) {
+            try {
+                return Integer.parseInt(s);
+            } catch (NumberFormatException ignored) {
+                // Not a number: the plugin falls back too
+            }
+        }
+        return fallback;
+    }
+
+    // ---------------------------------------------------------------------
+    // YAML subset
+    // ---------------------------------------------------------------------
+
+    private static final class Line {
+        final int indent;
+        final String text;
+
+        Line(int indent, String text) {
+            this.indent = indent;
+            this.text = text;
+        }
+    }
+
+    private static Map<String, Object> parse(Reader source) throws IOException {
+        List<Line> lines = new ArrayList<>();
+        BufferedReader in = new BufferedReader(source);
+        String raw;
+        while ((raw = in.readLine()) != null) {
+            String text = stripComment(raw);
+            if (text.isBlank()) {
+                continue;
+            }
+            int indent = 0;
+            while (text.charAt(indent) == ' ') {
+                indent++;
+            }
+            lines.add(new Line(indent, text.strip()));
+        }
+        int[] next = {0};
+        return lines.isEmpty() ? Map.of() : mapping(lines, next, lines.get(0).indent);
+    }
+
+    private static Map<String, Object> mapping(List<Line> lines, int[] next, int indent) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (next[0] < lines.size()) {
+            Line line = lines.get(next[0]);
+            if (line.indent < indent) {
+                break;
+            }
+            next[0]++;
+            int colon = keyEnd(line.text);
+            if (line.indent > indent || isListItem(line.text) || colon < 0) {
+                continue; // not part of this mapping
+            }
+
+            String key = unquote(line.text.substring(0, colon).strip());
+            String rest = line.text.substring(colon + 1).strip();
+            if (!rest.isEmpty()) {
+                map.put(key, value(rest));
+            } else if (next[0] < lines.size() && (lines.get(next[0]).indent > indent
+                    || lines.get(next[0]).indent == indent && isListItem(lines.get(next[0]).text))) {
+                Line first = lines.get(next[0]);
+                map.put(key, isListItem(first.text) ? list(lines, next, first.indent) : mapping(lines, next, first.indent));
+            } else {
+                map.put(key, null);
+            }
+        }
+        return map;
+    }
+
+    private static List<Object> list(List<Line> lines, int[] next, int indent) {
+        List<Object> list = new ArrayList<>();
+        while (next[0] < lines.size()) {
+            Line line = lines.get(next[0]);
+            if (line.indent != indent || !isListItem(line.text)) {
+                break;
+            }
+            next[0]++;
+            list.add(value(line.text.substring(1).strip()));
+        }
+        return list;
+    }
+
+    private static Object value(String text) {
+        if (text.startsWith("[") && text.endsWith("]")) {
+            List<Object> list = new ArrayList<>();
+            for (String item : text.substring(1, text.length() - 1).split(",")) {
+                if (!item.isBlank()) {
+                    list.add(unquote(item.strip()));
+                }
+            }
+            return list;
+        }
+        if (text.equals("{}")) {
+            return Map.of();
+        }
+        return unquote(text);
+    }
+
+    private static boolean isListItem(String text) {
+        return text.equals("-") || text.startsWith("- ");
+    }
+
+    // The colon ending a mapping key: followed by a space or the end of the line, outside quotes
+    private static int keyEnd(String text) {
+        char quote = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == ':' && (i + 1 == text.length() || text.charAt(i + 1) == ' ')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // A comment starts with '#' at the start of the line or after a space, outside quotes
+    private static String stripComment(String line) {
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '#' && (i == 0 || Character.isWhitespace(line.charAt(i - 1)))) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    private static String unquote(String text) {
+        if (text.length() >= 2 && (text.charAt(0) == '"' || text.charAt(0) == '\'')
+                && text.charAt(text.length() - 1) == text.charAt(0)) {
+            return text.substring(1, text.length() - 1);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,141 @@
+package com.daytonjwatson.chunkfall.tool;
+
+import com.daytonjwatson.chunkfall.config.PreserveRule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A dimension's preserve rules, applied to palette entries: block name and properties to
+ * the Y bands the block is kept in. The tool's counterpart of PreserveTable, which needs a
+ * running server for materials, tags and block data.
+ *
+ * Block tags cannot be expanded without the server's registries, so a rule using one is
+ * rejected rather than applied differently from the plugin. Immutable once compiled, so
+ * workers share one.
+ */
+final class PreserveMatcher {
+
+    private static final int[] NEVER = new int[0];
+    private static final int[] ALWAYS = {Integer.MIN_VALUE, Integer.MAX_VALUE};
+
+    // Block id -> conditions it is kept under
+    private final Map<String, List<Condition>> conditions = new HashMap<>();
+
+    private PreserveMatcher() {
+    }
+
+    /**
+     * @throws IllegalArgumentException for a rule the tool cannot apply (block tags)
+     */
+    static PreserveMatcher compile(List<PreserveRule> rules) {
+        PreserveMatcher matcher = new PreserveMatcher();
+        for (PreserveRule rule : rules) {
+            Map<String, String> state = rule.getState() != null ? parseState(rule.getState()) : null;
+            for (String block : rule.getBlocks()) {
+                if (block.startsWith("#")) {
+                    throw new IllegalArgumentException("Preserve rule '" + rule.getName() + "' uses block tag "
+                            + block + ", which the tool cannot expand without a server; list its blocks instead.");
+                }
+                matcher.conditions.computeIfAbsent(blockId(block), id -> new ArrayList<>())
+                        .add(new Condition(rule.getMinY(), rule.getMaxY(), state));
+            }
+        }
+        return matcher;
+    }
+
+    boolean isEmpty() {
+        return conditions.isEmpty();
+    }
+
+    /**
+     * Y bands {min, max, min, max, ...} (inclusive) in which a block with this name and
+     * these properties is kept; empty if it never is.
+     */
+    int[] bandsFor(String name, Map<String, String> properties) {
+        List<Condition> list = conditions.get(name);
+        if (list == null) {
+            return NEVER;
+        }
+        int[] bands = NEVER;
+        for (Condition condition : list) {
+            if (condition.state != null && !properties.entrySet().containsAll(condition.state.entrySet())) {
+                continue;
+            }
+            if (condition.minY == Integer.MIN_VALUE && condition.maxY == Integer.MAX_VALUE) {
+                return ALWAYS;
+            }
+            int[] grown = new int[bands.length + 2];
+            System.arraycopy(bands, 0, grown, 0, bands.length);
+            grown[bands.length] = condition.minY;
+            grown[bands.length + 1] = condition.maxY;
+            bands = grown;
+        }
+        return bands;
+    }
+
+    static boolean contains(int[] bands, int y) {
+        for (int i = 0; i < bands.length; i += 2) {
+            if (y >= bands[i] && y <= bands[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean overlaps(int[] bands, int minY, int maxY) {
+        for (int i = 0; i < bands.length; i += 2) {
+            if (bands[i] <= maxY && bands[i + 1] >= minY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean covers(int[] bands, int minY, int maxY) {
+        for (int i = 0; i < bands.length; i += 2) {
+            if (bands[i] <= minY && bands[i + 1] >= maxY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // "NETHER_BRICKS" or "minecraft:nether_bricks" -> "minecraft:nether_bricks"
+    private static String blockId(String name) {
+        name = name.trim().toLowerCase(Locale.ROOT);
+        return name.indexOf(':') < 0 ? "minecraft:" + name : name;
+    }
+
+    // "[waterlogged=true,half=top]" (optionally after a block name) -> properties
+    private static Map<String, String> parseState(String state) {
+        Map<String, String> properties = new HashMap<>();
+        int open = state.indexOf('[');
+        int close = state.lastIndexOf(']');
+        String body = open >= 0 ? state.substring(open + 1, close > open ? close : state.length()) : state;
+        for (String pair : body.split(",")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                properties.put(pair.substring(0, eq).trim().toLowerCase(Locale.ROOT),
+                        pair.substring(eq + 1).trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return properties;
+    }
+
+    private static final class Condition {
+        final int minY;
+        final int maxY;
+        // Properties the block must have; others may take any value. Null for any state
+        final Map<String, String> state;
+
+        Condition(int minY, int maxY, Map<String, String> state) {
+            this.minY = minY;
+            this.maxY = maxY;
+            this.state = state;
+        }
+    }
+}
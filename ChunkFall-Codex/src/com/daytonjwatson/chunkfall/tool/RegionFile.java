@@ -0,0 +1,180 @@
+package com.daytonjwatson.chunkfall.tool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only view of an Anvil (.mca) region file, read onto the heap in one go. Not mapped:
+ * a mapping outlives the channel, and on Windows the file could then not be replaced by
+ * its rewritten version.
+ */
+final class RegionFile {
+
+    static final int SECTOR_BYTES = 4096;
+    static final int CHUNKS = 1024;
+
+    static final int COMPRESSION_GZIP = 1;
+    static final int COMPRESSION_ZLIB = 2;
+    static final int COMPRESSION_NONE = 3;
+    static final int EXTERNAL_FLAG = 128; // payload lives in a c.<x>.<z>.mcc file
+
+    private final ByteBuffer data;
+    private final int regionX;
+    private final int regionZ;
+
+    private RegionFile(ByteBuffer data, int regionX, int regionZ) {
+        this.data = data;
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+    }
+
+    /**
+     * @return null if the file name is not r.X.Z.mca or the file has no header.
+     */
+    static RegionFile open(Path path) throws IOException {
+        String[] parts = path.getFileName().toString().split("\\.");
+        if (parts.length != 4 || !parts[0].equals("r") || !parts[3].equals("mca")) {
+            return null;
+        }
+
+        int regionX;
+        int regionZ;
+        try {
+            regionX = Integer.parseInt(parts[1]);
+            regionZ = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        // A region is at most a few MiB; the file is closed again before this returns
+        byte[] data = Files.readAllBytes(path);
+        if (data.length < 2 * SECTOR_BYTES) {
+            return null;
+        }
+        return new RegionFile(ByteBuffer.wrap(data), regionX, regionZ);
+    }
+
+    int getRegionX() {
+        return regionX;
+    }
+
+    int getRegionZ() {
+        return regionZ;
+    }
+
+    int chunkX(int index) {
+        return (regionX << 5) + (index & 31);
+    }
+
+    int chunkZ(int index) {
+        return (regionZ << 5) + (index >> 5);
+    }
+
+    int timestamp(int index) {
+        return data.getInt(SECTOR_BYTES + index * 4);
+    }
+
+    /**
+     * Raw payload of a chunk: compression type byte followed by the compressed data,
+     * or null if the chunk is absent or its header is broken.
+     */
+    ByteBuffer rawChunk(int index) {
+        int location = data.getInt(index * 4);
+        if (location == 0) {
+            return null;
+        }
+
+        long offset = (long) (location >>> 8) * SECTOR_BYTES;
+        if (offset + 5 > data.capacity()) {
+            return null;
+        }
+
+        int length = data.getInt((int) offset);
+        if (length <= 0 || offset + 4 + length > data.capacity()) {
+            return null;
+        }
+        return data.slice((int) offset + 4, length);
+    }
+
+    /**
+     * Decompress a raw payload into {@code out} (grown as needed).
+     *
+     * @return the decompressed chunk and its length, or null for external or unknown
+     *         compression (those chunks are copied unchanged).
+     */
+    static Decompressed decompress(ByteBuffer raw, Inflater inflater, byte[] out) throws IOException {
+        int type = raw.get(0) & 0xff;
+        ByteBuffer data = raw.slice(1, raw.remaining() - 1);
+
+        switch (type) {
+            case COMPRESSION_ZLIB -> {
+                inflater.reset();
+                inflater.setInput(data);
+                int len = 0;
+                try {
+                    while (!inflater.finished()) {
+                        if (len == out.length) {
+                            out = Arrays.copyOf(out, out.length * 2);
+                        }
+                        int n = inflater.inflate(out, len, out.length - len);
+                        if (n == 0 && inflater.needsInput()) {
+                            throw new IOException("Truncated zlib chunk");
+                        }
+                        len += n;
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt zlib chunk", e);
+                }
+                return new Decompressed(out, len);
+            }
+            case COMPRESSION_GZIP -> {
+                byte[] compressed = new byte[data.remaining()];
+                data.get(compressed);
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                    int len = 0;
+                    int n;
+                    while (true) {
+                        if (len == out.length) {
+                            out = Arrays.copyOf(out, out.length * 2);
+                        }
+                        n = in.read(out, len, out.length - len);
+                        if (n < 0) {
+                            break;
+                        }
+                        len += n;
+                    }
+                    return new Decompressed(out, len);
+                }
+            }
+            case COMPRESSION_NONE -> {
+                int len = data.remaining();
+                if (out.length < len) {
+                    out = new byte[len];
+                }
+                data.get(out, 0, len);
+                return new Decompressed(out, len);
+            }
+            default -> {
+                return null; // external (.mcc), LZ4 or custom: leave untouched
+            }
+        }
+    }
+
+    static final class Decompressed {
+        final byte[] data; // may be a grown replacement of the caller's buffer
+        final int length;
+
+        Decompressed(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
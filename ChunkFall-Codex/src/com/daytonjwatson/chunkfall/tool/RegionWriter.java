@@ -0,0 +1,102 @@
+package com.daytonjwatson.chunkfall.tool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a fresh region file chunk by chunk. Chunks are appended back to back, so the
+ * result has no free sectors; the header is written on close. A {@link #counting()}
+ * writer writes nothing and only adds up the size (dry runs).
+ */
+final class RegionWriter implements Closeable {
+
+    private static final int MAX_SECTORS = 255;
+
+    private final FileChannel channel; // null when only counting
+    private final ByteBuffer header = ByteBuffer.allocate(2 * RegionFile.SECTOR_BYTES);
+    private final ByteBuffer lengthPrefix = ByteBuffer.allocate(5);
+    private final ByteBuffer padding = ByteBuffer.allocate(RegionFile.SECTOR_BYTES);
+    private int nextSector = 2;
+
+    RegionWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channel.position(2L * RegionFile.SECTOR_BYTES);
+    }
+
+    private RegionWriter() {
+        this.channel = null;
+    }
+
+    static RegionWriter counting() {
+        return new RegionWriter();
+    }
+
+    /**
+     * Copy a raw payload (compression type + data) as it was.
+     */
+    void writeRaw(int index, ByteBuffer raw, int timestamp) throws IOException {
+        int length = raw.remaining();
+        lengthPrefix.clear();
+        lengthPrefix.putInt(length).flip();
+        write(index, timestamp, 4 + length, lengthPrefix, raw.duplicate());
+    }
+
+    /**
+     * Write a zlib-compressed chunk.
+     */
+    void writeZlib(int index, byte[] data, int length, int timestamp) throws IOException {
+        lengthPrefix.clear();
+        lengthPrefix.putInt(length + 1).put((byte) RegionFile.COMPRESSION_ZLIB).flip();
+        write(index, timestamp, 5 + length, lengthPrefix, ByteBuffer.wrap(data, 0, length));
+    }
+
+    private void write(int index, int timestamp, int totalBytes, ByteBuffer prefix, ByteBuffer body) throws IOException {
+        int sectors = (totalBytes + RegionFile.SECTOR_BYTES - 1) / RegionFile.SECTOR_BYTES;
+        if (sectors > MAX_SECTORS) {
+            throw new IOException("Chunk " + index + " needs " + sectors + " sectors");
+        }
+
+        if (channel != null) {
+            writeSectors(prefix, body, sectors * RegionFile.SECTOR_BYTES - totalBytes);
+        }
+        header.putInt(index * 4, (nextSector << 8) | sectors);
+        header.putInt(RegionFile.SECTOR_BYTES + index * 4, timestamp);
+        nextSector += sectors;
+    }
+
+    private void writeSectors(ByteBuffer prefix, ByteBuffer body, int pad) throws IOException {
+        while (prefix.hasRemaining()) {
+            channel.write(prefix);
+        }
+        while (body.hasRemaining()) {
+            channel.write(body);
+        }
+        padding.clear().limit(pad);
+        while (padding.hasRemaining()) {
+            channel.write(padding);
+        }
+    }
+
+    long sizeBytes() {
+        return (long) nextSector * RegionFile.SECTOR_BYTES;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        header.clear();
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+        channel.close();
+    }
+}
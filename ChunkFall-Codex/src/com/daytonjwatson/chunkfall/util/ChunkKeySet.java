@@ -0,0 +1,45 @@
+package com.daytonjwatson.chunkfall.util;
+
+import org.bukkit.generator.WorldInfo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Set of chunk coordinates partitioned per world, backed by primitive {@link LongHashSet}s.
+ *
+ * Keys are {@link ChunkKeyUtil#chunkKey(int, int)}, so chunks with the same coordinates in
+ * different worlds never collide. Synchronized, because worldgen threads share some of these.
+ */
+public final class ChunkKeySet {
+
+    private final Map<UUID, LongHashSet> worlds = new HashMap<>();
+
+    public synchronized boolean add(WorldInfo world, int x, int z) {
+        return worlds.computeIfAbsent(world.getUID(), uid -> new LongHashSet())
+                .add(ChunkKeyUtil.chunkKey(x, z));
+    }
+
+    public synchronized boolean contains(WorldInfo world, int x, int z) {
+        LongHashSet set = worlds.get(world.getUID());
+        return set != null && set.contains(ChunkKeyUtil.chunkKey(x, z));
+    }
+
+    public synchronized boolean remove(WorldInfo world, int x, int z) {
+        LongHashSet set = worlds.get(world.getUID());
+        return set != null && set.remove(ChunkKeyUtil.chunkKey(x, z));
+    }
+
+    public synchronized int size() {
+        int total = 0;
+        for (LongHashSet set : worlds.values()) {
+            total += set.size();
+        }
+        return total;
+    }
+
+    public synchronized void clear() {
+        worlds.clear();
+    }
+}
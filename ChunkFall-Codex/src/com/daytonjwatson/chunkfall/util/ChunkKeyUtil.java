@@ -1,18 +1,24 @@
 package com.daytonjwatson.chunkfall.util;
 
-import org.bukkit.World;
-
-import java.util.UUID;
-
 public final class ChunkKeyUtil {
 
     private ChunkKeyUtil() {
     }
 
-    public static long chunkKey(World world, int x, int z) {
-        UUID uuid = world.getUID();
-        long worldBits = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
-        long chunkBits = (((long) x) << 32) ^ (z & 0xffffffffL);
-        return worldBits ^ chunkBits;
+    /**
+     * Packs chunk (or region) coordinates into one long: x in the high 32 bits, z in the low 32.
+     * Every (x, z) pair maps to a distinct key. Keys carry no world, so keep one set per world
+     * (see {@link ChunkKeySet}).
+     */
+    public static long chunkKey(int x, int z) {
+        return (((long) x) << 32) | (z & 0xffffffffL);
+    }
+
+    public static int keyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int keyZ(long key) {
+        return (int) key;
     }
 }
@@ -0,0 +1,111 @@
+package com.daytonjwatson.chunkfall.util;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.HeightMap;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.generator.LimitedRegion;
+import org.bukkit.generator.WorldInfo;
+
+/**
+ * Visits only the blocks of a chunk that can be something other than air: empty sections
+ * are skipped whole and each column stops at its WORLD_SURFACE height (the highest
+ * non-air block), instead of walking every Y from min to max height.
+ */
+public final class ChunkScanUtil {
+
+    private ChunkScanUtil() {
+    }
+
+    public interface BlockVisitor {
+        /**
+         * @param x chunk-local for {@link #forEachBlock(Chunk, BlockVisitor)},
+         *          world coordinates for the LimitedRegion variant (same for z)
+         */
+        void visit(int x, int y, int z, Material type);
+    }
+
+    public interface KeepFilter {
+        /**
+         * @param x chunk-local (same for z)
+         */
+        boolean keep(int x, int y, int z, Material type);
+    }
+
+    /**
+     * Main thread. Sets every non-air block the filter does not keep to air, without
+     * physics, visiting blocks the way {@link #forEachBlock(Chunk, BlockVisitor)} does.
+     *
+     * @param keep null to clear everything
+     */
+    public static void clearChunk(Chunk chunk, KeepFilter keep) {
+        forEachBlock(chunk, (x, y, z, type) -> {
+            if (keep == null || !keep.keep(x, y, z, type)) {
+                chunk.getBlock(x, y, z).setType(Material.AIR, false);
+            }
+        });
+    }
+
+    /**
+     * Main thread. Types are read from a snapshot taken up front, so the visitor may
+     * change blocks it has been given.
+     */
+    public static void forEachBlock(Chunk chunk, BlockVisitor visitor) {
+        World world = chunk.getWorld();
+        int minY = world.getMinHeight();
+        int sections = (world.getMaxHeight() - minY) >> 4;
+        int baseX = chunk.getX() << 4;
+        int baseZ = chunk.getZ() << 4;
+
+        ChunkSnapshot snapshot = chunk.getChunkSnapshot(false, false, false);
+
+        int[] columnTop = new int[256];
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                columnTop[x << 4 | z] = world.getHighestBlockYAt(baseX + x, baseZ + z, HeightMap.WORLD_SURFACE);
+            }
+        }
+
+        for (int section = 0; section < sections; section++) {
+            if (snapshot.isSectionEmpty(section)) {
+                continue;
+            }
+            int sectionMinY = minY + (section << 4);
+
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    int endY = Math.min(sectionMinY + 15, columnTop[x << 4 | z]);
+                    for (int y = sectionMinY; y <= endY; y++) {
+                        Material type = snapshot.getBlockType(x, y, z);
+                        if (!type.isAir()) {
+                            visitor.visit(x, y, z, type);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Worldgen-thread variant for BlockPopulator. LimitedRegion has no section data, so
+     * only the heightmap bounds the scan.
+     */
+    public static void forEachBlock(WorldInfo world, LimitedRegion region, int cx, int cz, BlockVisitor visitor) {
+        int minY = world.getMinHeight();
+        int baseX = cx << 4;
+        int baseZ = cz << 4;
+
+        for (int x = baseX; x < baseX + 16; x++) {
+            for (int z = baseZ; z < baseZ + 16; z++) {
+                int endY = region.getHighestBlockYAt(x, z, HeightMap.WORLD_SURFACE);
+                for (int y = minY; y <= endY; y++) {
+                    Material type = region.getType(x, y, z);
+                    if (!type.isAir()) {
+                        visitor.visit(x, y, z, type);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.daytonjwatson.chunkfall.util;
+
+/**
+ * Open-addressing set of primitive longs (linear probing, no boxing).
+ *
+ * Not thread-safe on its own; see {@link ChunkKeySet} for the synchronized per-world wrapper.
+ */
+public final class LongHashSet {
+
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    // 0 is the EMPTY marker, so it is tracked separately (chunk 0,0 is a very real key)
+    private boolean containsZero;
+
+    public LongHashSet() {
+        this(64);
+    }
+
+    public LongHashSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) {
+            return containsZero;
+        }
+        int slot = slot(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == EMPTY) {
+                return false;
+            }
+            if (current == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return true if the key was not present before.
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int slot = slot(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == EMPTY) {
+                keys[slot] = key;
+                if (++size >= resizeAt) {
+                    rehash(keys.length << 1);
+                }
+                return true;
+            }
+            if (current == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return true if the key was present.
+     */
+    public boolean remove(long key) {
+        if (key == EMPTY) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+
+        int slot = slot(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == EMPTY) {
+                return false;
+            }
+            if (current == key) {
+                shiftBack(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(keys, EMPTY);
+        containsZero = false;
+        size = 0;
+    }
+
+    /**
+     * Backward-shift deletion: pull later entries of the probe chain into the freed slot,
+     * so lookups never need tombstones.
+     */
+    private void shiftBack(int freed) {
+        int slot = freed;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long current = keys[slot];
+            if (current == EMPTY) {
+                break;
+            }
+            int home = slot(current);
+            // Move the entry if its home is not cyclically within (freed, slot]
+            if (((slot - home) & mask) >= ((slot - freed) & mask)) {
+                keys[freed] = current;
+                freed = slot;
+            }
+        }
+        keys[freed] = EMPTY;
+    }
+
+    private int slot(long key) {
+        // murmur3 fmix64, spreads packed (x, z) coordinates over the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        allocate(capacity);
+        for (long key : old) {
+            if (key != EMPTY) {
+                int slot = slot(key);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+}